@@ -0,0 +1,51 @@
+package com.custardsource.hbase.benchmarks;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * In-memory {@link Result}s and column data so the benchmarks measure the builders and
+ * transformers rather than a cluster. Benchmarks that write use
+ * {@link com.custardsource.hbase.InMemoryHTable} from the hbase-utils test-jar.
+ */
+public final class BenchmarkFixtures {
+
+    public static final String FAMILY = "family";
+    public static final String COLUMN_PREFIX = "column";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * @return the qualifier for the given column index, zero padded so qualifiers sort in index
+     *         order
+     */
+    public static String column(int index) {
+        return String.format("%s%05d", COLUMN_PREFIX, index);
+    }
+
+    /**
+     * Builds a {@link Result} for a single row in {@link #FAMILY} with the given number of
+     * String-valued columns, as a scanner would return it.
+     */
+    public static Result result(String rowKey, int columns, int valueSize) {
+        byte[] row = Bytes.toBytes(rowKey);
+        byte[] family = Bytes.toBytes(FAMILY);
+        byte[] value = Bytes.toBytes(value(valueSize));
+
+        KeyValue[] keyValues = new KeyValue[columns];
+        for (int i = 0; i < columns; i++) {
+            keyValues[i] = new KeyValue(row, family, Bytes.toBytes(column(i)), 1L, value);
+        }
+        return new Result(keyValues);
+    }
+
+    public static String value(int valueSize) {
+        StringBuilder builder = new StringBuilder(valueSize);
+        for (int i = 0; i < valueSize; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        return builder.toString();
+    }
+}
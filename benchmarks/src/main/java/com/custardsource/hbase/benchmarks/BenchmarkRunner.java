@@ -0,0 +1,32 @@
+package com.custardsource.hbase.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * Entry point for the shaded benchmarks jar. Accepts the standard JMH command line (benchmark
+ * regexp, -p parameters, -rf result format etc) and always adds the GC profiler so each result
+ * carries its allocation rate (gc.alloc.rate.norm is bytes allocated per operation).
+ * </p>
+ * <p>
+ * Examples:
+ * </p>
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar
+ * java -jar target/benchmarks.jar PutBuilderBenchmark -p columns=256 -rf json -rff before.json
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        Options options = new OptionsBuilder().parent(commandLineOptions).addProfiler(
+                GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,56 @@
+package com.custardsource.hbase.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.filter.Filter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.custardsource.hbase.FilterBuilder;
+
+/**
+ * Measures building a {@link Filter} with {@link FilterBuilder} from one or several equality
+ * conditions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBuilderBenchmark {
+
+    @Param( { "1", "8" })
+    public int conditions;
+
+    private String[] columnNames;
+    private String value;
+
+    @Setup
+    public void setUp() {
+        columnNames = new String[conditions];
+        for (int i = 0; i < conditions; i++) {
+            columnNames[i] = BenchmarkFixtures.column(i);
+        }
+        value = BenchmarkFixtures.value(16);
+    }
+
+    @Benchmark
+    public Filter valueMustEqual() {
+        FilterBuilder<String, String> builder = FilterBuilder.stringBuilder().withColumnFamily(
+                BenchmarkFixtures.FAMILY);
+        for (String column : columnNames) {
+            builder.column(column).valueMustEqual(value);
+        }
+        return builder.build();
+    }
+}
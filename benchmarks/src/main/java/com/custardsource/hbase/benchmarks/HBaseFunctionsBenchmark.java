@@ -0,0 +1,62 @@
+package com.custardsource.hbase.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.custardsource.hbase.HBaseFunctions;
+
+/**
+ * Measures the String/byte[] encoding {@link com.google.common.base.Function}s in
+ * {@link HBaseFunctions}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HBaseFunctionsBenchmark {
+
+    @Param( { "8" })
+    public int families;
+
+    private String value;
+    private byte[] bytes;
+    private String[] familyNames;
+
+    @Setup
+    public void setUp() {
+        value = BenchmarkFixtures.value(32);
+        bytes = HBaseFunctions.STRING_TO_BYTES.apply(value);
+        familyNames = new String[families];
+        for (int i = 0; i < families; i++) {
+            familyNames[i] = BenchmarkFixtures.FAMILY + i;
+        }
+    }
+
+    @Benchmark
+    public byte[] stringToBytes() {
+        return HBaseFunctions.STRING_TO_BYTES.apply(value);
+    }
+
+    @Benchmark
+    public String bytesToString() {
+        return HBaseFunctions.BYTES_TO_STRING.apply(bytes);
+    }
+
+    @Benchmark
+    public byte[][] toByteArrays() {
+        return HBaseFunctions.toByteArrays(familyNames);
+    }
+}
@@ -0,0 +1,72 @@
+package com.custardsource.hbase.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.custardsource.hbase.InMemoryHTable;
+import com.custardsource.hbase.PutBuilder;
+
+/**
+ * Measures {@link PutBuilder} construction and {@link PutBuilder#putAll()} for narrow (a handful
+ * of columns) and wide (hundreds of columns) rows. The {@link InMemoryHTable} discards every write,
+ * so only the builder is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PutBuilderBenchmark {
+
+    @Param( { "4", "256" })
+    public int columns;
+
+    @Param( { "16" })
+    public int valueSize;
+
+    private InMemoryHTable table;
+    private String[] columnNames;
+    private String value;
+
+    @Setup
+    public void setUp() {
+        table = InMemoryHTable.create("benchmark").withDiscardingWrites();
+        columnNames = new String[columns];
+        for (int i = 0; i < columns; i++) {
+            columnNames[i] = BenchmarkFixtures.column(i);
+        }
+        value = BenchmarkFixtures.value(valueSize);
+    }
+
+    @Benchmark
+    public void stringRowKey() {
+        PutBuilder builder = new PutBuilder(table).withRowKey("row-0000001").withColumnFamily(
+                BenchmarkFixtures.FAMILY);
+        for (String column : columnNames) {
+            builder.put(column, value);
+        }
+        builder.putAll();
+    }
+
+    @Benchmark
+    public void longRowKeyLongValues() {
+        PutBuilder builder = new PutBuilder(table).withRowKey(1234567L).withColumnFamily(
+                BenchmarkFixtures.FAMILY);
+        for (int i = 0; i < columnNames.length; i++) {
+            builder.put(columnNames[i], (long) i);
+        }
+        builder.putAll();
+    }
+}
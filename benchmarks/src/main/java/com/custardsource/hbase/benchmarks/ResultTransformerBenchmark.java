@@ -0,0 +1,64 @@
+package com.custardsource.hbase.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.custardsource.hbase.ResultTransformer;
+
+/**
+ * Measures decoding a {@link Result} through {@link ResultTransformer}, and the cost of
+ * {@link ResultTransformer#columnsStartingWith(String)} over the decoded row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultTransformerBenchmark {
+
+    @Param( { "4", "256" })
+    public int columns;
+
+    @Param( { "16" })
+    public int valueSize;
+
+    private Result result;
+    private ResultTransformer<String, String> transformer;
+    private String prefix;
+
+    @Setup
+    public void setUp() {
+        result = BenchmarkFixtures.result("row-0000001", columns, valueSize);
+        transformer = ResultTransformer.forStrings(result, BenchmarkFixtures.FAMILY);
+        // matches roughly the first tenth of the columns
+        prefix = BenchmarkFixtures.column(columns / 10).substring(0,
+                BenchmarkFixtures.COLUMN_PREFIX.length() + 4);
+    }
+
+    @Benchmark
+    public Map<String, String> forStrings() {
+        return ResultTransformer.forStrings(result, BenchmarkFixtures.FAMILY).transform();
+    }
+
+    @Benchmark
+    public void columnsStartingWith(Blackhole blackhole) {
+        for (Map.Entry<String, String> entry : transformer.columnsStartingWith(prefix).entrySet()) {
+            blackhole.consume(entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.custardsource.hbase.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.custardsource.hbase.RowKeyDecoder;
+import com.custardsource.hbase.RowKeyEncoder;
+
+/**
+ * Measures building (tenant, metric, reversed-timestamp) row keys with a reused
+ * {@link RowKeyEncoder} against concatenating the {@link Bytes} encoding of each component, and
+ * decoding them again with a reused {@link RowKeyDecoder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowKeyEncoderBenchmark {
+
+    private static final String TENANT = "tenant-00042";
+    private static final String METRIC = "cpu.user";
+
+    private final RowKeyEncoder encoder = new RowKeyEncoder();
+    private final RowKeyDecoder decoder = new RowKeyDecoder();
+    private final byte[] encodedKey = new RowKeyEncoder().addString(TENANT).addString(METRIC)
+            .addReversedLong(1300000000000L).toBytes();
+    private long timestamp = 1300000000000L;
+
+    @Benchmark
+    public byte[] concatenatedBytes() {
+        return Bytes.add(Bytes.toBytes(TENANT), Bytes.toBytes(METRIC), Bytes.toBytes(Long.MAX_VALUE
+                - timestamp++));
+    }
+
+    @Benchmark
+    public byte[] reusedEncoder() {
+        return encoder.reset().addString(TENANT).addString(METRIC).addReversedLong(timestamp++)
+                .toBytes();
+    }
+
+    @Benchmark
+    public long decodeTimestamp() {
+        return decoder.wrap(encodedKey).skipComponent().skipComponent().readReversedLong();
+    }
+}
@@ -0,0 +1,82 @@
+package com.custardsource.hbase;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Tunes the number of Puts sent per {@link org.apache.hadoop.hbase.client.HTable#put(java.util.List)}
+ * from the latency observed for previous batches. A batch completing within the target latency
+ * grows the next batch by a quarter, a slower one halves it, always staying between the configured
+ * minimum and maximum. As region servers slow down (memstore pressure, compactions, region moves)
+ * the client backs off quickly and recovers gradually.
+ * </p>
+ * <p>
+ * Instances are thread-safe, and may be shared between writers to the same table so that they all
+ * react to the same observations.
+ * </p>
+ * <p>
+ * Examples:
+ * </p>
+ *
+ * <pre>
+ * AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 10000, 200, TimeUnit.MILLISECONDS);
+ * new PutBuilder(hTable).withAdaptiveBatching(sizer)...putAll();
+ * </pre>
+ */
+public class AdaptiveBatchSizer {
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetLatencyNanos;
+    private final AtomicInteger batchSize;
+
+    /**
+     * Starts at the minimum batch size.
+     *
+     * @param minBatchSize
+     * @param maxBatchSize
+     * @param targetLatency
+     *            the longest a single batch should take
+     * @param unit
+     */
+    public AdaptiveBatchSizer(int minBatchSize, int maxBatchSize, long targetLatency, TimeUnit unit) {
+        Preconditions.checkArgument(minBatchSize > 0, "minBatchSize must be positive");
+        Preconditions.checkArgument(maxBatchSize >= minBatchSize,
+                "maxBatchSize must be at least minBatchSize");
+        Preconditions.checkArgument(targetLatency > 0, "targetLatency must be positive");
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.targetLatencyNanos = unit.toNanos(targetLatency);
+        this.batchSize = new AtomicInteger(minBatchSize);
+    }
+
+    /**
+     * @return the number of Puts to send in the next batch
+     */
+    public int getBatchSize() {
+        return batchSize.get();
+    }
+
+    /**
+     * Adjusts the batch size given how long a batch took.
+     *
+     * @param elapsedNanos
+     */
+    public void record(long elapsedNanos) {
+        while (true) {
+            int current = batchSize.get();
+            int next;
+            if (elapsedNanos > targetLatencyNanos) {
+                next = Math.max(minBatchSize, current / 2);
+            } else {
+                next = Math.min(maxBatchSize, current + Math.max(1, current / 4));
+            }
+            if (next == current || batchSize.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.custardsource.hbase;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * The count, sum, minimum and maximum of a set of numeric cell values, as computed by
+ * {@link RegionAggregator}. Partial aggregates from each region are combined with
+ * {@link #merge(Aggregate)}.
+ * </p>
+ * <p>
+ * Integral values (from {@link HBaseFunctions#BYTES_TO_LONG} or {@link HBaseFunctions#BYTES_TO_INT}
+ * for example) are summed as a long, so their sum is exact, see {@link #getLongSum()}, as are their
+ * minimum and maximum, see {@link #getLongMin()} and {@link #getLongMax()}. Only once a floating
+ * point value is seen, or the long sum overflows, is the sum accumulated as a double.
+ * </p>
+ */
+public class Aggregate {
+
+    private long count = 0;
+    private long integralSum = 0;
+    private double floatingSum = 0;
+    private boolean exact = true;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private long longMin = Long.MAX_VALUE;
+    private long longMax = Long.MIN_VALUE;
+
+    void add(Number value) {
+        count++;
+        if (isIntegral(value)) {
+            long longValue = value.longValue();
+            addIntegral(longValue);
+            longMin = Math.min(longMin, longValue);
+            longMax = Math.max(longMax, longValue);
+        } else {
+            floatingSum += value.doubleValue();
+            exact = false;
+        }
+        min = Math.min(min, value.doubleValue());
+        max = Math.max(max, value.doubleValue());
+    }
+
+    Aggregate merge(Aggregate other) {
+        count += other.count;
+        addIntegral(other.integralSum);
+        floatingSum += other.floatingSum;
+        exact &= other.exact;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        longMin = Math.min(longMin, other.longMin);
+        longMax = Math.max(longMax, other.longMax);
+        return this;
+    }
+
+    private void addIntegral(long value) {
+        long result = integralSum + value;
+        if (((integralSum ^ result) & (value ^ result)) < 0) {
+            // overflowed, carry on approximately
+            floatingSum += (double) integralSum + value;
+            integralSum = 0;
+            exact = false;
+        } else {
+            integralSum = result;
+        }
+    }
+
+    private static boolean isIntegral(Number value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte;
+    }
+
+    /**
+     * @return the number of values, rows missing the column are not counted
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return integralSum + floatingSum;
+    }
+
+    /**
+     * @return whether every value was integral and their sum fits in a long, in which case
+     *         {@link #getLongSum()}, {@link #getLongMin()} and {@link #getLongMax()} are exact
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * @return the exact sum of the values
+     * @throws IllegalStateException
+     *             if the sum is not exact, see {@link #isExact()}
+     */
+    public long getLongSum() {
+        Preconditions.checkState(exact, "The sum includes non-integral values or overflowed");
+        return integralSum;
+    }
+
+    /**
+     * @return the exact smallest value
+     * @throws IllegalStateException
+     *             if there were no values, or they are not exact, see {@link #isExact()}
+     */
+    public long getLongMin() {
+        checkExactValues();
+        return longMin;
+    }
+
+    /**
+     * @return the exact largest value
+     * @throws IllegalStateException
+     *             if there were no values, or they are not exact, see {@link #isExact()}
+     */
+    public long getLongMax() {
+        checkExactValues();
+        return longMax;
+    }
+
+    private void checkExactValues() {
+        Preconditions.checkState(count > 0, "There were no values");
+        Preconditions.checkState(exact,
+                "The values include non-integral values or their sum overflowed");
+    }
+
+    /**
+     * @return the smallest value, or NaN if there were none
+     */
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    /**
+     * @return the largest value, or NaN if there were none
+     */
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    /**
+     * @return the mean value, or NaN if there were none
+     */
+    public double getAverage() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        return exact ? (double) integralSum / count : getSum() / count;
+    }
+
+    @Override
+    public String toString() {
+        boolean exactValues = exact && count > 0;
+        return String.format("count=%d sum=%s min=%s max=%s avg=%s", count, exact ? String
+                .valueOf(integralSum) : String.valueOf(getSum()), exactValues ? String
+                .valueOf(longMin) : String.valueOf(getMin()), exactValues ? String
+                .valueOf(longMax) : String.valueOf(getMax()), getAverage());
+    }
+}
@@ -0,0 +1,25 @@
+package com.custardsource.hbase;
+
+import java.util.List;
+
+import org.apache.hadoop.hbase.client.Put;
+
+/**
+ * Receives the Puts that still failed once a {@link RetryPolicy} has been exhausted, instead of
+ * the whole batch being failed with a {@link RuntimeException}. Implementations might log them,
+ * spool them to disk or queue them for later replay.
+ *
+ * @see LoggingDeadLetterSink
+ */
+public interface DeadLetterSink {
+
+    /**
+     * @param tableName
+     *            the table the Puts were destined for
+     * @param puts
+     *            only those Puts that were not applied
+     * @param cause
+     *            the failure from the final attempt
+     */
+    void accept(String tableName, List<Put> puts, Throwable cause);
+}
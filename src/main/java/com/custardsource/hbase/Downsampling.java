@@ -0,0 +1,13 @@
+package com.custardsource.hbase;
+
+/**
+ * How {@link VersionedResultTransformer} combines the versions of a cell falling within one window
+ * into a single point.
+ */
+public enum Downsampling {
+    MEAN, SUM, MIN, MAX, COUNT,
+    /**
+     * The value of the newest version in the window
+     */
+    LAST;
+}
@@ -31,6 +31,27 @@ public class HBaseFunctions {
 
     };
 
+    public static final Function<byte[], Long> BYTES_TO_LONG = new Function<byte[], Long>() {
+        @Override
+        public Long apply(byte[] b) {
+            return Bytes.toLong(b);
+        }
+    };
+
+    public static final Function<byte[], Integer> BYTES_TO_INT = new Function<byte[], Integer>() {
+        @Override
+        public Integer apply(byte[] b) {
+            return Bytes.toInt(b);
+        }
+    };
+
+    public static final Function<byte[], Double> BYTES_TO_DOUBLE = new Function<byte[], Double>() {
+        @Override
+        public Double apply(byte[] b) {
+            return Bytes.toDouble(b);
+        }
+    };
+
     public static byte[][] toByteArrays(String... strings) {
         Collection<byte[]> transform = Collections2.transform(Arrays.asList(strings),
                 STRING_TO_BYTES);
@@ -3,9 +3,13 @@ package com.custardsource.hbase;
 import java.io.IOException;
 
 import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Writables;
 import org.apache.hadoop.io.Writable;
 
+import com.custardsource.hbase.metrics.ClientMetrics;
+import com.custardsource.hbase.metrics.NoOpClientMetrics;
+
 /**
  * <p>
  * General Utility functions for overarching common HBase functions.
@@ -40,11 +44,43 @@ public class HBaseUtils {
      * @param table
      */
     public static void flushQuietly(HTable table) {
-        try {
-            table.flushCommits();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        flushQuietly(table, NoOpClientMetrics.INSTANCE);
+    }
+
+    /**
+     * Attempt to flushCommits, recording the flush latency and the size of the flushed write buffer
+     * against the given {@link ClientMetrics}. Any {@link IOException} caught is recorded as a
+     * failure and propagated as a {@link RuntimeException}
+     * 
+     * @param table
+     * @param metrics
+     */
+    public static void flushQuietly(HTable table, ClientMetrics metrics) {
+        flushQuietly(table, RetryPolicy.NO_RETRIES, null, metrics);
+    }
+
+    /**
+     * Attempt to flushCommits, retrying only the failed Puts according to the given
+     * {@link RetryPolicy}. Puts that still fail are passed to the {@link DeadLetterSink}, or if it
+     * is null the last {@link IOException} is propagated as a {@link RuntimeException}
+     * 
+     * @see RetryingBatchWriter
+     * @param table
+     * @param retryPolicy
+     * @param deadLetterSink
+     * @param metrics
+     */
+    public static void flushQuietly(HTable table, RetryPolicy retryPolicy,
+            DeadLetterSink deadLetterSink, ClientMetrics metrics) {
+        new RetryingBatchWriter(table, retryPolicy, deadLetterSink, metrics).flush();
+    }
+
+    /**
+     * @param table
+     * @return the name of the table as a String, or null if it is not known
+     */
+    public static String tableName(HTable table) {
+        return table.getTableName() == null ? null : Bytes.toString(table.getTableName());
     }
 
     /**
@@ -0,0 +1,166 @@
+package com.custardsource.hbase;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * <p>
+ * Looks up data rows through a {@link SecondaryIndex}, using the same fluent style as
+ * {@link FilterBuilder}. Rather than a full table scan testing every row server-side, the matching
+ * range of the index table is scanned and the data rows it names are fetched with batched Gets.
+ * </p>
+ * <p>
+ * Every fetched row is checked against the predicate before it is returned, so stale index
+ * entries (left behind when an indexed value is overwritten) are skipped. A row whose old and new
+ * values both fall in the range is fetched and returned only once.
+ * </p>
+ * <p>
+ * Examples:
+ * </p>
+ *
+ * <pre>
+ * List&lt;Result&gt; rows = index.stringQuery(dataTable).withColumnFamily(&quot;user&quot;).column(&quot;country&quot;)
+ *         .valueBetween(&quot;AU&quot;, &quot;NZ&quot;).find();
+ * </pre>
+ *
+ * @param <KEY>
+ * @param <VALUE>
+ */
+public class IndexQuery<KEY, VALUE> {
+
+    private static final int DEFAULT_FETCH_BATCH_SIZE = 100;
+
+    private final SecondaryIndex index;
+    private final HTable dataTable;
+    private final Function<KEY, byte[]> keyTransformer;
+    private final Function<VALUE, byte[]> valueTransformer;
+
+    private byte[] currentColumnFamily;
+    private byte[] currentColumn;
+    private byte[] fromValue;
+    private byte[] toValue;
+    private boolean toInclusive;
+    private int fetchBatchSize = DEFAULT_FETCH_BATCH_SIZE;
+
+    public IndexQuery(SecondaryIndex index, HTable dataTable, Function<KEY, byte[]> keyTransformer,
+            Function<VALUE, byte[]> valueTransformer) {
+        this.index = index;
+        this.dataTable = dataTable;
+        this.keyTransformer = keyTransformer;
+        this.valueTransformer = valueTransformer;
+    }
+
+    public IndexQuery<KEY, VALUE> withColumnFamily(String columnFamily) {
+        this.currentColumnFamily = Bytes.toBytes(columnFamily);
+        return this;
+    }
+
+    public IndexQuery<KEY, VALUE> column(KEY column) {
+        this.currentColumn = keyTransformer.apply(column);
+        return this;
+    }
+
+    public IndexQuery<KEY, VALUE> valueMustEqual(VALUE value) {
+        byte[] bytes = valueTransformer.apply(value);
+        this.fromValue = bytes;
+        this.toValue = bytes;
+        this.toInclusive = true;
+        return this;
+    }
+
+    /**
+     * @param from
+     *            inclusive
+     * @param to
+     *            exclusive
+     * @return
+     */
+    public IndexQuery<KEY, VALUE> valueBetween(VALUE from, VALUE to) {
+        this.fromValue = valueTransformer.apply(from);
+        this.toValue = valueTransformer.apply(to);
+        this.toInclusive = false;
+        return this;
+    }
+
+    /**
+     * The number of data rows fetched per multi-Get.
+     */
+    public IndexQuery<KEY, VALUE> withFetchBatchSize(int fetchBatchSize) {
+        Preconditions.checkArgument(fetchBatchSize > 0, "fetchBatchSize must be positive");
+        this.fetchBatchSize = fetchBatchSize;
+        return this;
+    }
+
+    /**
+     * @return the matching data rows, in index (value) order
+     * @throws IOException
+     */
+    public List<Result> find() throws IOException {
+        Preconditions.checkNotNull(currentColumnFamily);
+        Preconditions.checkNotNull(currentColumn);
+        Preconditions.checkNotNull(fromValue, "No predicate has been specified");
+        Preconditions.checkState(index.isIndexed(currentColumnFamily, currentColumn),
+                "Column is not indexed");
+
+        byte[] start = SecondaryIndex.startOfValue(currentColumnFamily, currentColumn, fromValue);
+        byte[] stop = toInclusive ? SecondaryIndex.endOfValue(currentColumnFamily, currentColumn,
+                toValue) : SecondaryIndex.startOfValue(currentColumnFamily, currentColumn, toValue);
+
+        List<Result> results = Lists.newArrayList();
+        List<Get> gets = Lists.newArrayListWithCapacity(fetchBatchSize);
+        Set<byte[]> dataRowKeys = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
+        ResultScanner scanner = new ResultScannerBuilder(index.getIndexTable()).startAt(start)
+                .stopAt(stop).withCaching(fetchBatchSize).build();
+        try {
+            Result indexRow;
+            while ((indexRow = scanner.next()) != null) {
+                byte[] dataRowKey = indexRow.getValue(SecondaryIndex.INDEX_FAMILY_BYTES,
+                        SecondaryIndex.ROW_QUALIFIER);
+                if (!dataRowKeys.add(dataRowKey)) {
+                    continue;
+                }
+                gets.add(new Get(dataRowKey));
+                if (gets.size() == fetchBatchSize) {
+                    fetch(gets, results);
+                }
+            }
+        } finally {
+            scanner.close();
+        }
+        fetch(gets, results);
+        return results;
+    }
+
+    private void fetch(List<Get> gets, List<Result> results) throws IOException {
+        if (gets.isEmpty()) {
+            return;
+        }
+        for (Result result : dataTable.get(gets)) {
+            if (result != null && !result.isEmpty() && matches(result)) {
+                results.add(result);
+            }
+        }
+        gets.clear();
+    }
+
+    private boolean matches(Result result) {
+        byte[] value = result.getValue(currentColumnFamily, currentColumn);
+        if (value == null || Bytes.compareTo(value, fromValue) < 0) {
+            return false;
+        }
+        int comparedToEnd = Bytes.compareTo(value, toValue);
+        return toInclusive ? comparedToEnd <= 0 : comparedToEnd < 0;
+    }
+}
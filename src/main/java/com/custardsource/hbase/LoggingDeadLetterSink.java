@@ -0,0 +1,27 @@
+package com.custardsource.hbase;
+
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * A {@link DeadLetterSink} that logs the row key of every failed Put at ERROR level, and carries
+ * on.
+ */
+public class LoggingDeadLetterSink implements DeadLetterSink {
+
+    private static final Log LOG = LogFactory.getLog(LoggingDeadLetterSink.class);
+
+    @Override
+    public void accept(String tableName, List<Put> puts, Throwable cause) {
+        LOG.error(String.format("%d Puts to table %s failed after retries", puts.size(),
+                tableName), cause);
+        for (Put put : puts) {
+            LOG.error(String.format("Failed Put to table %s for row %s", tableName, Bytes
+                    .toStringBinary(put.getRow())));
+        }
+    }
+}
@@ -7,10 +7,17 @@ import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Writables;
 import org.apache.hadoop.io.Writable;
 
+import com.custardsource.hbase.metrics.ClientMetrics;
+import com.custardsource.hbase.metrics.NoOpClientMetrics;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * A Builder Pattern helper class to allow expressive Put modifications.
@@ -31,6 +38,17 @@ builder.withRowKey(2ndRowKey).withColumnFamily("eek")
 ..
 builder.putAll();
  </pre>
+ *
+ * Supplying a {@link ClientMetrics} via {@link #withMetrics(ClientMetrics)} records the latency,
+ * row, cell and byte counts of every {@link #putAll()}.
+ *
+ * By default a failed {@link #putAll()} throws a {@link RuntimeException}. A {@link RetryPolicy}
+ * resubmits only the Puts that failed, and a {@link DeadLetterSink} receives those that still fail
+ * once the policy is exhausted, see {@link RetryingBatchWriter}.
+ *
+ * Backfills can be throttled with a shared {@link WriteRateLimiter}, and split into batches that
+ * track region server latency with an {@link AdaptiveBatchSizer}. Columns declared in a
+ * {@link SecondaryIndex} are indexed as part of the same {@link #putAll()}.
  */
 public class PutBuilder {
 
@@ -39,11 +57,64 @@ public class PutBuilder {
     private byte[] currentColumnFamily;
     private byte[] currentRowKey;
     private long currentTimeStamp = HConstants.LATEST_TIMESTAMP;
+    private ClientMetrics metrics = NoOpClientMetrics.INSTANCE;
+    private RetryPolicy retryPolicy = RetryPolicy.NO_RETRIES;
+    private DeadLetterSink deadLetterSink = null;
+    private WriteRateLimiter rateLimiter = null;
+    private AdaptiveBatchSizer batchSizer = null;
+    private SecondaryIndex secondaryIndex = null;
 
     public PutBuilder(HTable hTable) {
         this.hTable = hTable;
     }
 
+    public PutBuilder withMetrics(ClientMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public PutBuilder withRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public PutBuilder withDeadLetterSink(DeadLetterSink deadLetterSink) {
+        this.deadLetterSink = deadLetterSink;
+        return this;
+    }
+
+    /**
+     * Every batch sent by {@link #putAll()} first acquires its cells (or bytes) from the given
+     * limiter, which may be shared across threads and builders. Batches are capped at one second's
+     * worth of the limiter's rate, so a large putAll() is sent as a series of bounded bursts. The
+     * rows of a {@link #withSecondaryIndex(SecondaryIndex) secondary index} are charged along
+     * with their batch, but don't count towards that cap.
+     */
+    public PutBuilder withRateLimiter(WriteRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * {@link #putAll()} sends the Puts in batches sized by the given {@link AdaptiveBatchSizer},
+     * rather than all at once, feeding back the latency of each batch. Each batch is flushed, so
+     * that with auto-flush off the time measured is the round trip to the region servers rather
+     * than an append to the client's write buffer.
+     */
+    public PutBuilder withAdaptiveBatching(AdaptiveBatchSizer batchSizer) {
+        this.batchSizer = batchSizer;
+        return this;
+    }
+
+    /**
+     * Every {@link #putAll()} also writes the index rows for any indexed columns, to the index's
+     * table and just ahead of the data.
+     */
+    public PutBuilder withSecondaryIndex(SecondaryIndex secondaryIndex) {
+        this.secondaryIndex = secondaryIndex;
+        return this;
+    }
+
     public PutBuilder withColumnFamily(String columnFamily) {
         return withColumnFamily(Bytes.toBytes(columnFamily));
     }
@@ -119,10 +190,100 @@ public class PutBuilder {
     }
 
     public void putAll()  {
-        try {
-            hTable.put(puts);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        RetryingBatchWriter writer = new RetryingBatchWriter(hTable, retryPolicy, deadLetterSink,
+                metrics);
+        IndexWriter indexWriter = secondaryIndex == null ? null : new IndexWriter();
+        if (rateLimiter == null && batchSizer == null) {
+            write(writer, indexWriter, puts, indexPutsFor(puts));
+            return;
+        }
+
+        int from = 0;
+        while (from < puts.size()) {
+            int batchSize = batchSizer == null ? puts.size() : batchSizer.getBatchSize();
+            int to = Math.min(puts.size(), from + batchSize);
+            if (rateLimiter != null) {
+                to = rateLimiter.endOfBatch(puts, from, to);
+            }
+            List<Put> batch = puts.subList(from, to);
+            List<Put> indexPuts = indexPutsFor(batch);
+            if (rateLimiter != null) {
+                // index rows are sent to the cluster too
+                rateLimiter.acquire(rateLimiter.permits(batch) + rateLimiter.permits(indexPuts));
+            }
+
+            long start = System.nanoTime();
+            write(writer, indexWriter, batch, indexPuts);
+            if (batchSizer != null) {
+                writer.flush();
+                batchSizer.record(System.nanoTime() - start);
+            }
+            from += batch.size();
+        }
+    }
+
+    private List<Put> indexPutsFor(List<Put> batch) {
+        return secondaryIndex == null ? Collections.<Put> emptyList() : secondaryIndex
+                .indexPutsFor(batch);
+    }
+
+    /**
+     * Index rows are written (and flushed) first, so a reader following the index never misses
+     * data that has been written; an index row whose data write failed is skipped by
+     * {@link IndexQuery}. Data Puts whose index rows were dead-lettered are dead-lettered too,
+     * rather than written where the index can't find them.
+     */
+    private void write(RetryingBatchWriter writer, IndexWriter indexWriter, List<Put> batch,
+            List<Put> indexPuts) {
+        List<Put> indexed = indexWriter == null ? batch : indexWriter.write(batch, indexPuts);
+        if (!indexed.isEmpty()) {
+            writer.put(indexed);
+        }
+    }
+
+    /**
+     * Writes index rows ahead of their data, noting the data rows whose index rows end up in the
+     * {@link DeadLetterSink}.
+     */
+    private class IndexWriter implements DeadLetterSink {
+        private final HTable indexTable = secondaryIndex.getIndexTable();
+        private final RetryingBatchWriter writer = new RetryingBatchWriter(indexTable,
+                retryPolicy, deadLetterSink == null ? null : this, metrics);
+        private final Set<byte[]> unindexedRows = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
+        private Throwable cause;
+
+        /**
+         * @return the data Puts whose index rows were all written
+         */
+        List<Put> write(List<Put> batch, List<Put> indexPuts) {
+            if (indexPuts.isEmpty()) {
+                return batch;
+            }
+            writer.put(indexPuts);
+            if (!indexTable.isAutoFlush()) {
+                writer.flush();
+            }
+            if (unindexedRows.isEmpty()) {
+                return batch;
+            }
+
+            List<Put> indexed = Lists.newArrayListWithCapacity(batch.size());
+            List<Put> unindexed = Lists.newArrayList();
+            for (Put put : batch) {
+                (unindexedRows.contains(put.getRow()) ? unindexed : indexed).add(put);
+            }
+            unindexedRows.clear();
+            deadLetterSink.accept(HBaseUtils.tableName(hTable), unindexed, cause);
+            return indexed;
+        }
+
+        @Override
+        public void accept(String tableName, List<Put> puts, Throwable cause) {
+            deadLetterSink.accept(tableName, puts, cause);
+            for (Put put : puts) {
+                unindexedRows.add(SecondaryIndex.dataRowKey(put));
+            }
+            this.cause = cause;
         }
     }
 
@@ -151,4 +312,13 @@ public class PutBuilder {
         return this;
     }
 
+    /**
+     * Uses the key currently encoded by the {@link RowKeyEncoder}, which may then be reset and
+     * reused for the next row.
+     */
+    public PutBuilder withRowKey(RowKeyEncoder rowKey) {
+        this.currentRowKey = rowKey.toBytes();
+        return this;
+    }
+
 }
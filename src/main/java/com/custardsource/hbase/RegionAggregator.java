@@ -0,0 +1,212 @@
+package com.custardsource.hbase;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+
+/**
+ * <p>
+ * Computes row counts and numeric aggregates over the rows described by a
+ * {@link ResultScannerBuilder}, by splitting the scan at region boundaries, scanning every region
+ * in parallel and combining the partial results on the client.
+ * </p>
+ * <p>
+ * Each region scan fetches as little as possible: a row count only transfers the first key of
+ * each row ({@link FirstKeyOnlyFilter} and {@link KeyOnlyFilter}), and a sum only the one column
+ * being aggregated. If the builder carries its own {@link Filter} it is respected as-is, and the
+ * builder's column families are kept, since value filters need to see the columns they test. Block
+ * caching is turned off for these scans so they don't evict the working set.
+ * </p>
+ * <p>
+ * Examples:
+ * </p>
+ *
+ * <pre>
+ * ExecutorService executor = Executors.newFixedThreadPool(16);
+ * long rows = new ResultScannerBuilder(table).startAt(startRowKey).aggregate(executor).rowCount();
+ * Aggregate bytes = new ResultScannerBuilder(table).aggregate(executor).aggregate(&quot;stats&quot;,
+ *         &quot;bytes&quot;, HBaseFunctions.BYTES_TO_LONG);
+ * </pre>
+ */
+public class RegionAggregator {
+
+    private static final int DEFAULT_CACHING = 1000;
+
+    private final ResultScannerBuilder scannerBuilder;
+    private final ExecutorService executorService;
+
+    public RegionAggregator(ResultScannerBuilder scannerBuilder, ExecutorService executorService) {
+        this.scannerBuilder = scannerBuilder;
+        this.executorService = executorService;
+    }
+
+    /**
+     * @return the number of rows matched by the scan
+     * @throws IOException
+     */
+    public long rowCount() throws IOException {
+        List<Callable<Long>> tasks = Lists.newArrayList();
+        for (final Scan scan : regionScans()) {
+            if (scan.getFilter() == null) {
+                scan.setFilter(new FilterList(Arrays.<Filter> asList(new FirstKeyOnlyFilter(),
+                        new KeyOnlyFilter())));
+            }
+            tasks.add(new Callable<Long>() {
+                @Override
+                public Long call() throws IOException {
+                    ResultScanner scanner = scannerBuilder.open(scan);
+                    try {
+                        long rows = 0;
+                        while (scanner.next() != null) {
+                            rows++;
+                        }
+                        return rows;
+                    } finally {
+                        scanner.close();
+                    }
+                }
+            });
+        }
+
+        long rows = 0;
+        for (Long partial : invokeAll(tasks)) {
+            rows += partial;
+        }
+        return rows;
+    }
+
+    public Aggregate aggregate(String family, String qualifier,
+            Function<byte[], ? extends Number> codec) throws IOException {
+        return aggregate(Bytes.toBytes(family), Bytes.toBytes(qualifier), codec);
+    }
+
+    /**
+     * @param family
+     * @param qualifier
+     * @param codec
+     *            decodes each cell value, e.g. {@link HBaseFunctions#BYTES_TO_LONG}
+     * @return the count, sum, min, max and average of the column over the rows matched by the scan
+     * @throws IOException
+     */
+    public Aggregate aggregate(final byte[] family, final byte[] qualifier,
+            final Function<byte[], ? extends Number> codec) throws IOException {
+        List<Callable<Aggregate>> tasks = Lists.newArrayList();
+        for (final Scan scan : regionScans()) {
+            if (scan.getFilter() == null) {
+                scan.getFamilyMap().clear();
+                scan.addColumn(family, qualifier);
+            } else if (scan.hasFamilies() && !scan.getFamilyMap().containsKey(family)) {
+                scan.addFamily(family);
+            }
+            tasks.add(new Callable<Aggregate>() {
+                @Override
+                public Aggregate call() throws IOException {
+                    Aggregate aggregate = new Aggregate();
+                    ResultScanner scanner = scannerBuilder.open(scan);
+                    try {
+                        Result result;
+                        while ((result = scanner.next()) != null) {
+                            byte[] value = result.getValue(family, qualifier);
+                            if (value != null) {
+                                aggregate.add(codec.apply(value));
+                            }
+                        }
+                        return aggregate;
+                    } finally {
+                        scanner.close();
+                    }
+                }
+            });
+        }
+
+        Aggregate aggregate = new Aggregate();
+        for (Aggregate partial : invokeAll(tasks)) {
+            aggregate.merge(partial);
+        }
+        return aggregate;
+    }
+
+    /**
+     * @return one {@link Scan} per region overlapping the builder's start and stop rows, each
+     *         bounded by the region
+     */
+    List<Scan> regionScans() throws IOException {
+        HTable table = scannerBuilder.getTable();
+        Scan spec = scannerBuilder.buildScan();
+        byte[] scanStart = spec.getStartRow();
+        byte[] scanStop = spec.getStopRow();
+
+        Pair<byte[][], byte[][]> regions = table.getStartEndKeys();
+        byte[][] startKeys = regions.getFirst();
+        byte[][] endKeys = regions.getSecond();
+
+        List<Scan> scans = Lists.newArrayList();
+        for (int i = 0; i < startKeys.length; i++) {
+            byte[] start = Bytes.compareTo(scanStart, startKeys[i]) > 0 ? scanStart : startKeys[i];
+            byte[] stop = earliestStop(scanStop, endKeys[i]);
+            if (stop.length > 0 && Bytes.compareTo(start, stop) >= 0) {
+                continue;
+            }
+
+            Scan scan = scannerBuilder.buildScan();
+            scan.setStartRow(start);
+            scan.setStopRow(stop);
+            if (scan.getCaching() <= 0) {
+                scan.setCaching(DEFAULT_CACHING);
+            }
+            scan.setCacheBlocks(false);
+            scans.add(scan);
+        }
+        return scans;
+    }
+
+    /**
+     * An empty stop row means the end of the table, so sorts after everything else.
+     */
+    private static byte[] earliestStop(byte[] a, byte[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        return Bytes.compareTo(a, b) < 0 ? a : b;
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = Lists.newArrayList();
+        try {
+            for (Future<T> future : executorService.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+}
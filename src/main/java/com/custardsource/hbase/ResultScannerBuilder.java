@@ -3,13 +3,19 @@ package com.custardsource.hbase;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.io.Writable;
 
+import com.custardsource.hbase.metrics.ClientMetrics;
+import com.custardsource.hbase.metrics.InstrumentedResultScanner;
+import com.custardsource.hbase.metrics.NoOpClientMetrics;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 
 /**
@@ -39,6 +45,14 @@ public class ResultScannerBuilder {
 
     private Filter filter = null;
 
+    private int caching = -1;
+    private int maxVersions = -1;
+    private long minTimeStamp = -1;
+    private long maxTimeStamp = -1;
+    private boolean cacheBlocks = true;
+
+    private ClientMetrics metrics = NoOpClientMetrics.INSTANCE;
+
     public ResultScannerBuilder(HTable table) {
         this.table = table;
     }
@@ -53,6 +67,14 @@ public class ResultScannerBuilder {
     }
 
     public ResultScanner build() throws IOException {
+        return open(buildScan());
+    }
+
+    /**
+     * @return a new {@link Scan} configured from the current state of this builder, without
+     *         opening a scanner
+     */
+    public Scan buildScan() {
         Scan scan = new Scan();
         for (byte[] family : familyNames) {
             scan.addFamily(family);
@@ -69,7 +91,34 @@ public class ResultScannerBuilder {
             scan.setFilter(filter);
         }
 
-        return table.getScanner(scan);
+        if (caching > 0) {
+            scan.setCaching(caching);
+        }
+        if (maxVersions > 0) {
+            scan.setMaxVersions(maxVersions);
+        }
+        if (maxTimeStamp > 0) {
+            try {
+                scan.setTimeRange(minTimeStamp, maxTimeStamp);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        scan.setCacheBlocks(cacheBlocks);
+
+        return scan;
+    }
+
+    /**
+     * Opens a scanner on this builder's table for the given {@link Scan}, instrumented if this
+     * builder has {@link ClientMetrics}.
+     */
+    ResultScanner open(Scan scan) throws IOException {
+        ResultScanner scanner = table.getScanner(scan);
+        if (!metrics.isEnabled()) {
+            return scanner;
+        }
+        return new InstrumentedResultScanner(scanner, HBaseUtils.tableName(table), metrics);
     }
 
     public ResultScannerBuilder startAt(Writable startRowKey) {
@@ -90,9 +139,133 @@ public class ResultScannerBuilder {
         return this;
     }
 
+    public ResultScannerBuilder startAt(RowKeyEncoder startRowKey) {
+        return startAt(startRowKey.toBytes());
+    }
+
+    public ResultScannerBuilder stopAt(RowKeyEncoder stopRowKey) {
+        return stopAt(stopRowKey.toBytes());
+    }
+
+    /**
+     * Restricts the scan to rows starting with the key currently encoded by the
+     * {@link RowKeyEncoder}, by setting both the start and stop rows. Unlike a
+     * {@link org.apache.hadoop.hbase.filter.PrefixFilter} alone, no rows outside the prefix are
+     * read.
+     * 
+     * @param rowPrefix
+     * @return
+     */
+    public ResultScannerBuilder withRowPrefix(RowKeyEncoder rowPrefix) {
+        this.startRow = rowPrefix.toBytes();
+        this.stopRow = rowPrefix.toPrefixStopRow();
+        return this;
+    }
+
     public ResultScannerBuilder withFilter(Filter filter) {
         this.filter = filter;
         return this;
     }
 
+    /**
+     * The number of rows fetched per RPC to the region server, defaulting to the client's
+     * configured <code>hbase.client.scanner.caching</code>.
+     * 
+     * @see Scan#setCaching(int)
+     * @param caching
+     * @return
+     */
+    public ResultScannerBuilder withCaching(int caching) {
+        this.caching = caching;
+        return this;
+    }
+
+    /**
+     * The number of versions of each cell to return, newest first, defaulting to only the latest.
+     * 
+     * @see Scan#setMaxVersions(int)
+     * @see VersionedResultTransformer
+     * @param maxVersions
+     * @return
+     */
+    public ResultScannerBuilder withMaxVersions(int maxVersions) {
+        Preconditions.checkArgument(maxVersions > 0, "maxVersions must be positive");
+        this.maxVersions = maxVersions;
+        return this;
+    }
+
+    /**
+     * Returns every version of each cell the column family retains.
+     * 
+     * @see Scan#setMaxVersions()
+     * @return
+     */
+    public ResultScannerBuilder withAllVersions() {
+        return withMaxVersions(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Only returns cell versions with timestamps in the given range.
+     * 
+     * @see Scan#setTimeRange(long, long)
+     * @param minTimeStamp
+     *            inclusive
+     * @param maxTimeStamp
+     *            exclusive
+     * @return
+     */
+    public ResultScannerBuilder withTimeRange(long minTimeStamp, long maxTimeStamp) {
+        Preconditions.checkArgument(minTimeStamp >= 0 && minTimeStamp < maxTimeStamp,
+                "Invalid time range [" + minTimeStamp + ", " + maxTimeStamp + ")");
+        this.minTimeStamp = minTimeStamp;
+        this.maxTimeStamp = maxTimeStamp;
+        return this;
+    }
+
+    /**
+     * Whether blocks read by this scan should be kept in the region server's block cache. Large
+     * one-off scans should turn this off to avoid evicting the working set.
+     * 
+     * @see Scan#setCacheBlocks(boolean)
+     * @param cacheBlocks
+     * @return
+     */
+    public ResultScannerBuilder withCacheBlocks(boolean cacheBlocks) {
+        this.cacheBlocks = cacheBlocks;
+        return this;
+    }
+
+    /**
+     * @return a {@link RegionAggregator} computing aggregates over the rows this builder would scan,
+     *         one region at a time in parallel
+     */
+    public RegionAggregator aggregate(ExecutorService executorService) {
+        return new RegionAggregator(this, executorService);
+    }
+
+    /**
+     * @return a lazily evaluated {@link ScanStream} over the rows this builder would scan. The
+     *         scanner is opened when the stream is first iterated and closed when it is exhausted
+     *         or terminated early.
+     */
+    public ScanStream<Result> stream() {
+        return ScanStream.of(this);
+    }
+
+    HTable getTable() {
+        return table;
+    }
+
+    /**
+     * Wraps the built {@link ResultScanner} so every call to next() is recorded against the given
+     * {@link ClientMetrics}. When the metrics are disabled the raw scanner is returned untouched.
+     * 
+     * @param metrics
+     * @return
+     */
+    public ResultScannerBuilder withMetrics(ClientMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
 }
@@ -55,6 +55,28 @@ public class ResultTransformer<KEY extends Comparable<?>, VALUE> {
                 HBaseFunctions.BYTES_TO_STRING, HBaseFunctions.BYTES_TO_STRING);
     }
 
+    /**
+     * @return a {@link Function} transforming each {@link Result} it is applied to, suitable for
+     *         {@link ScanStream#map(Function)}
+     */
+    public static <KEY extends Comparable<?>, VALUE> Function<Result, NavigableMap<KEY, VALUE>> function(
+            final String columnFamily, final Function<byte[], KEY> keyTransformer,
+            final Function<byte[], VALUE> valueTransformer) {
+        return new Function<Result, NavigableMap<KEY, VALUE>>() {
+            @Override
+            public NavigableMap<KEY, VALUE> apply(Result result) {
+                return new ResultTransformer<KEY, VALUE>(result, columnFamily, keyTransformer,
+                        valueTransformer).transform();
+            }
+        };
+    }
+
+    public static Function<Result, NavigableMap<String, String>> stringsFunction(
+            String columnFamily) {
+        return function(columnFamily, HBaseFunctions.BYTES_TO_STRING,
+                HBaseFunctions.BYTES_TO_STRING);
+    }
+
     public Map<KEY, VALUE> columnsStartingWith(final String prefix) {
 
         return Maps.filterKeys(transformedMap, new Predicate<KEY>() {
@@ -0,0 +1,71 @@
+package com.custardsource.hbase;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Caps retries to a fraction of overall write traffic, so that when a cluster is struggling
+ * clients back off rather than multiplying the load with resubmissions.
+ * </p>
+ * <p>
+ * The budget starts full. Every original batch submission deposits <code>retryRatio</code> of a
+ * token (up to <code>capacity</code>), and every retry must withdraw a whole token. A ratio of 0.1
+ * therefore allows roughly one retry per ten batches once the initial capacity is spent.
+ * </p>
+ * <p>
+ * Instances are thread-safe and are intended to be shared across all writers to a cluster.
+ * </p>
+ */
+public class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long capacity;
+    private final AtomicLong balance;
+
+    public RetryBudget(double retryRatio, int capacity) {
+        Preconditions.checkArgument(retryRatio >= 0, "retryRatio must not be negative");
+        Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+        this.deposit = (long) (retryRatio * SCALE);
+        this.capacity = capacity * SCALE;
+        this.balance = new AtomicLong(this.capacity);
+    }
+
+    /**
+     * Records an original (non-retry) submission.
+     */
+    public void deposit() {
+        while (true) {
+            long current = balance.get();
+            long updated = Math.min(capacity, current + deposit);
+            if (updated == current || balance.compareAndSet(current, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if a retry is permitted, in which case a token has been consumed
+     */
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of whole retries currently available
+     */
+    public long getAvailableRetries() {
+        return balance.get() / SCALE;
+    }
+}
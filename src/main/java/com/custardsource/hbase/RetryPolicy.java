@@ -0,0 +1,149 @@
+package com.custardsource.hbase;
+
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Describes how a failed batch of writes is retried: how many attempts are made, how long to wait
+ * between them (exponential backoff with jitter) and, optionally, a shared {@link RetryBudget}
+ * capping retries across every writer using the policy.
+ * </p>
+ * <p>
+ * Instances are immutable, each <code>with</code> method returns a new policy, so a policy may be
+ * safely shared between threads.
+ * </p>
+ * <p>
+ * Examples:
+ * </p>
+ *
+ * <pre>
+ * RetryPolicy policy = RetryPolicy.exponentialBackoff().withMaxAttempts(5).withBackoff(100, 10000)
+ *         .withJitter(0.5).withRetryBudget(new RetryBudget(0.1, 100));
+ * new PutBuilder(hTable).withRetryPolicy(policy)...putAll();
+ * </pre>
+ */
+public final class RetryPolicy {
+
+    /**
+     * A single attempt, failures are never retried.
+     */
+    public static final RetryPolicy NO_RETRIES = new RetryPolicy(1, 0, 0, 0, null);
+
+    private static final Random RANDOM = new Random();
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final double jitter;
+    private final RetryBudget retryBudget;
+
+    private RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis,
+            double jitter, RetryBudget retryBudget) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.jitter = jitter;
+        this.retryBudget = retryBudget;
+    }
+
+    /**
+     * @return a policy of 3 attempts, backing off from 100ms up to 10s with 50% jitter and no
+     *         retry budget
+     */
+    public static RetryPolicy exponentialBackoff() {
+        return new RetryPolicy(3, 100, 10000, 0.5, null);
+    }
+
+    /**
+     * @param maxAttempts
+     *            the total number of attempts, including the first
+     * @return
+     */
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        Preconditions.checkArgument(maxAttempts > 0, "maxAttempts must be positive");
+        return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, jitter,
+                retryBudget);
+    }
+
+    /**
+     * The wait before retry <i>n</i> is <code>initialBackoffMillis * 2^(n-1)</code>, capped at
+     * <code>maxBackoffMillis</code>.
+     *
+     * @param initialBackoffMillis
+     * @param maxBackoffMillis
+     * @return
+     */
+    public RetryPolicy withBackoff(long initialBackoffMillis, long maxBackoffMillis) {
+        Preconditions.checkArgument(initialBackoffMillis >= 0 && maxBackoffMillis >= 0,
+                "backoff must not be negative");
+        return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, jitter,
+                retryBudget);
+    }
+
+    /**
+     * @param jitter
+     *            between 0.0 and 1.0, the fraction of each backoff that is randomised so clients
+     *            that failed together don't all retry together
+     * @return
+     */
+    public RetryPolicy withJitter(double jitter) {
+        Preconditions.checkArgument(jitter >= 0 && jitter <= 1, "jitter must be between 0 and 1");
+        return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, jitter,
+                retryBudget);
+    }
+
+    public RetryPolicy withRetryBudget(RetryBudget retryBudget) {
+        return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, jitter,
+                retryBudget);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Called once for every original (non-retry) submission.
+     */
+    void recordSubmission() {
+        if (retryBudget != null) {
+            retryBudget.deposit();
+        }
+    }
+
+    /**
+     * @param failedAttempts
+     *            the number of attempts made so far
+     * @return true if another attempt may be made, consuming from the {@link RetryBudget} if there
+     *         is one
+     */
+    boolean allowRetry(int failedAttempts) {
+        if (failedAttempts >= maxAttempts) {
+            return false;
+        }
+        return retryBudget == null || retryBudget.tryWithdraw();
+    }
+
+    /**
+     * @param failedAttempts
+     *            the number of attempts made so far, at least 1
+     * @return how long to wait before the next attempt
+     */
+    long backoffMillis(int failedAttempts) {
+        long backoff = initialBackoffMillis;
+        for (int i = 1; i < failedAttempts && backoff < maxBackoffMillis; i++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, maxBackoffMillis);
+
+        if (jitter > 0 && backoff > 0) {
+            double randomised;
+            synchronized (RANDOM) {
+                randomised = RANDOM.nextDouble();
+            }
+            backoff -= (long) (backoff * jitter * randomised);
+        }
+        return backoff;
+    }
+}
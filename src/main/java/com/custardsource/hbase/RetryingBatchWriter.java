@@ -0,0 +1,213 @@
+package com.custardsource.hbase;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+
+import com.custardsource.hbase.metrics.CellSizes;
+import com.custardsource.hbase.metrics.ClientMetrics;
+import com.custardsource.hbase.metrics.Operation;
+import com.google.common.collect.Lists;
+
+/**
+ * <p>
+ * Submits batches of Puts to an {@link HTable} according to a {@link RetryPolicy}, resubmitting
+ * only the subset of a batch that failed rather than replaying all of it.
+ * </p>
+ * <p>
+ * The failed subset is taken from the {@link RetriesExhaustedWithDetailsException} when the
+ * client provides one, otherwise from whatever the client left in its write buffer, and only as a
+ * last resort is the whole batch assumed to have failed.
+ * </p>
+ * <p>
+ * Once the policy is exhausted, the Puts that still failed are handed to the
+ * {@link DeadLetterSink} if there is one, otherwise the last {@link IOException} is propagated as
+ * a {@link RuntimeException}.
+ * </p>
+ * <p>
+ * This is the engine behind {@link PutBuilder#putAll()} and
+ * {@link HBaseUtils#flushQuietly(HTable, RetryPolicy, DeadLetterSink, ClientMetrics)}; every attempt
+ * is recorded against the {@link ClientMetrics}.
+ * </p>
+ */
+public class RetryingBatchWriter {
+
+    private final HTable table;
+    private final RetryPolicy retryPolicy;
+    private final DeadLetterSink deadLetterSink;
+    private final ClientMetrics metrics;
+
+    /**
+     * @param table
+     * @param retryPolicy
+     * @param deadLetterSink
+     *            may be null, in which case exhausted failures are propagated
+     * @param metrics
+     */
+    public RetryingBatchWriter(HTable table, RetryPolicy retryPolicy,
+            DeadLetterSink deadLetterSink, ClientMetrics metrics) {
+        this.table = table;
+        this.retryPolicy = retryPolicy;
+        this.deadLetterSink = deadLetterSink;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Submits the Puts via {@link HTable#put(List)}.
+     *
+     * @param puts
+     */
+    public void put(List<Put> puts) {
+        write(puts, Operation.PUT);
+    }
+
+    /**
+     * Flushes the table's write buffer via {@link HTable#flushCommits()}. The buffer is only
+     * copied if the flush fails, when the Puts to retry or dead-letter are needed.
+     */
+    public void flush() {
+        write(null, Operation.FLUSH);
+    }
+
+    /**
+     * @param puts
+     *            the Puts to submit, or null to flush whatever is in the write buffer
+     */
+    private void write(List<Put> puts, Operation operation) {
+        retryPolicy.recordSubmission();
+
+        List<Put> pending = puts;
+        int attempts = 0;
+        while (true) {
+            attempts++;
+            try {
+                submit(pending, operation, attempts);
+                return;
+            } catch (IOException e) {
+                List<Put> failed = failedPuts(pending, e);
+                if (failed.isEmpty() || !retryPolicy.allowRetry(attempts) || !backOff(attempts)) {
+                    giveUp(failed, operation, e);
+                    return;
+                }
+                metrics.recordRetry(HBaseUtils.tableName(table), operation);
+                pending = failed;
+            }
+        }
+    }
+
+    private void submit(List<Put> pending, Operation operation, int attempt) throws IOException {
+        if (!metrics.isEnabled()) {
+            attempt(pending, operation, attempt);
+            return;
+        }
+
+        // sized before the attempt, as a successful flush empties the write buffer
+        List<Put> measured = pending == null ? bufferedPuts() : pending;
+        int rows = measured.size();
+        int cells = CellSizes.cellCount(measured);
+        long bytes = CellSizes.byteSize(measured);
+        long start = System.nanoTime();
+        try {
+            attempt(pending, operation, attempt);
+        } finally {
+            // failed attempts are often the slowest, so they are timed too
+            long elapsedNanos = System.nanoTime() - start;
+            metrics.record(HBaseUtils.tableName(table), operation, rows, cells, bytes,
+                    elapsedNanos);
+        }
+    }
+
+    private void attempt(List<Put> pending, Operation operation, int attempt) throws IOException {
+        if (attempt == 1) {
+            if (operation == Operation.PUT) {
+                table.put(pending);
+            } else {
+                table.flushCommits();
+            }
+            return;
+        }
+
+        if (hasBufferedPuts()) {
+            // the client kept the failures in its write buffer, so resubmitting them would
+            // duplicate them
+            table.flushCommits();
+        } else {
+            table.put(pending);
+            if (operation == Operation.FLUSH) {
+                table.flushCommits();
+            }
+        }
+    }
+
+    private List<Put> failedPuts(List<Put> pending, IOException e) {
+        if (e instanceof RetriesExhaustedWithDetailsException) {
+            RetriesExhaustedWithDetailsException details = (RetriesExhaustedWithDetailsException) e;
+            List<Put> failed = Lists.newArrayList();
+            for (int i = 0; i < details.getNumExceptions(); i++) {
+                if (details.getRow(i) instanceof Put) {
+                    failed.add((Put) details.getRow(i));
+                }
+            }
+            if (!failed.isEmpty()) {
+                return failed;
+            }
+        }
+        if (hasBufferedPuts()) {
+            return Lists.newArrayList(table.getWriteBuffer());
+        }
+        return pending == null ? Collections.<Put> emptyList() : pending;
+    }
+
+    private boolean hasBufferedPuts() {
+        return !bufferedPuts().isEmpty();
+    }
+
+    /**
+     * @return the table's live write buffer, not a copy
+     */
+    private List<Put> bufferedPuts() {
+        List<Put> writeBuffer = table.getWriteBuffer();
+        return writeBuffer == null ? Collections.<Put> emptyList() : writeBuffer;
+    }
+
+    /**
+     * @return false if interrupted while waiting
+     */
+    private boolean backOff(int failedAttempts) {
+        long backoffMillis = retryPolicy.backoffMillis(failedAttempts);
+        if (backoffMillis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(backoffMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void giveUp(List<Put> failed, Operation operation, IOException cause) {
+        String tableName = HBaseUtils.tableName(table);
+        metrics.recordFailure(tableName, operation);
+        if (deadLetterSink == null || failed.isEmpty()) {
+            throw new RuntimeException(cause);
+        }
+
+        // otherwise the next flush of the table would quietly try them again
+        List<Put> writeBuffer = table.getWriteBuffer();
+        if (writeBuffer != null) {
+            // by identity, one hash lookup per buffered Put rather than a scan of failed
+            Set<Put> failedPuts = Collections.newSetFromMap(new IdentityHashMap<Put, Boolean>());
+            failedPuts.addAll(failed);
+            writeBuffer.removeAll(failedPuts);
+        }
+        deadLetterSink.accept(tableName, failed, cause);
+    }
+}
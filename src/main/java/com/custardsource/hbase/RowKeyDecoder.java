@@ -0,0 +1,174 @@
+package com.custardsource.hbase;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Reads back the components of a row key written by {@link RowKeyEncoder}, in the order they were
+ * added. Numeric components are decoded straight from the key bytes, and Strings through a
+ * character buffer reused across keys, so a decoder can be {@link #wrap(byte[]) wrapped} around
+ * each row of a scan in turn without allocating beyond the Strings it returns.
+ * </p>
+ * <p>
+ * A decoder is not thread safe. Examples:
+ * </p>
+ *
+ * <pre>
+ * RowKeyDecoder decoder = new RowKeyDecoder();
+ * for (Result result : scanner) {
+ *     decoder.wrap(result.getRow()).skipComponent();
+ *     String metric = decoder.readString();
+ *     long timestamp = decoder.readReversedLong();
+ * }
+ * </pre>
+ */
+public class RowKeyDecoder {
+
+    private byte[] key;
+    private int position;
+    private int end;
+    private char[] chars = new char[64];
+
+    public RowKeyDecoder wrap(byte[] key) {
+        return wrap(key, 0, key.length);
+    }
+
+    public RowKeyDecoder wrap(byte[] key, int offset, int length) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkArgument(offset >= 0 && length >= 0 && offset + length <= key.length,
+                "offset and length must lie within the key");
+        this.key = key;
+        this.position = offset;
+        this.end = offset + length;
+        return this;
+    }
+
+    /**
+     * @return whether there are bytes left to decode
+     */
+    public boolean hasRemaining() {
+        return position < end;
+    }
+
+    public int readInt() {
+        return readRawInt() ^ Integer.MIN_VALUE;
+    }
+
+    public long readLong() {
+        return readRawLong() ^ Long.MIN_VALUE;
+    }
+
+    public long readReversedLong() {
+        return ~readRawLong() ^ Long.MIN_VALUE;
+    }
+
+    public double readDouble() {
+        long bits = readRawLong();
+        return Double.longBitsToDouble(bits < 0 ? bits ^ Long.MIN_VALUE : ~bits);
+    }
+
+    public String readString() {
+        int length = 0;
+        while (true) {
+            int b = nextByte();
+            if (b == 0) {
+                if (nextByte() == 0) {
+                    break;
+                }
+                b = 0;
+            }
+            if (length + 2 > chars.length) {
+                char[] grown = new char[chars.length * 2];
+                System.arraycopy(chars, 0, grown, 0, length);
+                chars = grown;
+            }
+            if (b < 0x80) {
+                chars[length++] = (char) b;
+            } else if (b < 0xE0) {
+                chars[length++] = (char) (((b & 0x1F) << 6) | continuation());
+            } else if (b < 0xF0) {
+                chars[length++] = (char) (((b & 0x0F) << 12) | (continuation() << 6)
+                        | continuation());
+            } else {
+                int codePoint = ((b & 0x07) << 18) | (continuation() << 12)
+                        | (continuation() << 6) | continuation();
+                int offset = codePoint - 0x10000;
+                chars[length++] = (char) (0xD800 | (offset >>> 10));
+                chars[length++] = (char) (0xDC00 | (offset & 0x3FF));
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    public byte[] readBytes() {
+        int start = position;
+        int length = 0;
+        while (skipEscapedByte()) {
+            length++;
+        }
+        byte[] value = new byte[length];
+        int read = start;
+        for (int i = 0; i < length; i++) {
+            value[i] = key[read];
+            read += key[read] == RowKeyEncoder.SEPARATOR ? 2 : 1;
+        }
+        return value;
+    }
+
+    /**
+     * Skips a String or byte[] component without decoding it.
+     */
+    public RowKeyDecoder skipComponent() {
+        while (skipEscapedByte()) {
+            // nothing to do
+        }
+        return this;
+    }
+
+    /**
+     * Skips a fixed width (int, long or double) component of the given number of bytes.
+     */
+    public RowKeyDecoder skip(int bytes) {
+        checkRemaining(bytes);
+        position += bytes;
+        return this;
+    }
+
+    /**
+     * @return false once the terminator of the current component has been consumed
+     */
+    private boolean skipEscapedByte() {
+        if (nextByte() == 0) {
+            return nextByte() != 0;
+        }
+        return true;
+    }
+
+    private int continuation() {
+        return nextByte() & 0x3F;
+    }
+
+    private int nextByte() {
+        checkRemaining(1);
+        return key[position++] & 0xFF;
+    }
+
+    private int readRawInt() {
+        checkRemaining(4);
+        int value = ((key[position] & 0xFF) << 24) | ((key[position + 1] & 0xFF) << 16)
+                | ((key[position + 2] & 0xFF) << 8) | (key[position + 3] & 0xFF);
+        position += 4;
+        return value;
+    }
+
+    private long readRawLong() {
+        long high = readRawInt() & 0xFFFFFFFFL;
+        return (high << 32) | (readRawInt() & 0xFFFFFFFFL);
+    }
+
+    private void checkRemaining(int bytes) {
+        if (end - position < bytes) {
+            throw new IllegalArgumentException("Row key is shorter than its components");
+        }
+    }
+}
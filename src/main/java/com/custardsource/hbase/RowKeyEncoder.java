@@ -0,0 +1,230 @@
+package com.custardsource.hbase;
+
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Encodes composite row keys from typed components into a single byte layout that sorts, under
+ * HBase's unsigned lexicographic ordering, exactly as the component tuples do. Components are
+ * written into a buffer owned by the encoder, which is reused across keys after a
+ * {@link #reset()}, so the only allocation per key is the final byte[] from {@link #toBytes()}.
+ * {@link RowKeyDecoder} reads the components back.
+ * </p>
+ * <p>
+ * The layout of each component is:
+ * </p>
+ * <ul>
+ * <li>int and long: big-endian with the sign bit flipped, so negative values sort first</li>
+ * <li>reversed long: the bitwise complement of the long encoding, so the largest value sorts first
+ * (for newest-first timestamps)</li>
+ * <li>double: IEEE 754 bits with the sign bit flipped for positive values and every bit flipped for
+ * negative ones</li>
+ * <li>String (as UTF-8) and byte[]: the bytes with 0x00 escaped as 0x00 0xFF, followed by a 0x00
+ * 0x00 terminator, so no component is mistaken for a prefix of a longer one</li>
+ * </ul>
+ * <p>
+ * Because every component is self-delimiting, the encoding of the leading components of a key is a
+ * prefix of the whole key and can be used to scan every key sharing them, see
+ * {@link ResultScannerBuilder#withRowPrefix(RowKeyEncoder)}.
+ * </p>
+ * <p>
+ * An encoder is not thread safe. Examples:
+ * </p>
+ *
+ * <pre>
+ * RowKeyEncoder encoder = new RowKeyEncoder();
+ * for (Sample sample : samples) {
+ *     builder.withRowKey(encoder.reset().addString(tenant).addString(metric).addReversedLong(
+ *             sample.getTimestamp())).withColumnFamily(&quot;m&quot;).put(&quot;value&quot;, sample.getValue());
+ * }
+ *
+ * ResultScanner latestFirst = new ResultScannerBuilder(table).withRowPrefix(
+ *         encoder.reset().addString(tenant).addString(metric)).build();
+ * </pre>
+ */
+public class RowKeyEncoder {
+
+    static final byte SEPARATOR = 0x00;
+    static final byte ESCAPE = (byte) 0xFF;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private byte[] buffer;
+    private int length = 0;
+
+    public RowKeyEncoder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RowKeyEncoder(int initialCapacity) {
+        Preconditions.checkArgument(initialCapacity > 0, "initialCapacity must be positive");
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Discards the components written so far, keeping the buffer for the next key.
+     */
+    public RowKeyEncoder reset() {
+        length = 0;
+        return this;
+    }
+
+    public RowKeyEncoder addInt(int value) {
+        ensureCapacity(4);
+        writeInt(value ^ Integer.MIN_VALUE);
+        return this;
+    }
+
+    public RowKeyEncoder addLong(long value) {
+        ensureCapacity(8);
+        writeLong(value ^ Long.MIN_VALUE);
+        return this;
+    }
+
+    /**
+     * Adds a long that sorts in descending order, typically a timestamp so the newest rows for a
+     * prefix are scanned first.
+     */
+    public RowKeyEncoder addReversedLong(long value) {
+        ensureCapacity(8);
+        writeLong(~(value ^ Long.MIN_VALUE));
+        return this;
+    }
+
+    public RowKeyEncoder addDouble(double value) {
+        ensureCapacity(8);
+        long bits = Double.doubleToLongBits(value);
+        writeLong(bits < 0 ? ~bits : bits ^ Long.MIN_VALUE);
+        return this;
+    }
+
+    /**
+     * Adds the UTF-8 bytes of the String, encoded straight into the buffer.
+     */
+    public RowKeyEncoder addString(String value) {
+        Preconditions.checkNotNull(value);
+        // worst case: 3 bytes per char, each 0x00 escaped, plus the terminator
+        ensureCapacity(value.length() * 3 + 2);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == 0) {
+                buffer[length++] = SEPARATOR;
+                buffer[length++] = ESCAPE;
+            } else if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        writeTerminator();
+        return this;
+    }
+
+    public RowKeyEncoder addBytes(byte[] value) {
+        Preconditions.checkNotNull(value);
+        ensureCapacity(value.length * 2 + 2);
+        for (byte b : value) {
+            buffer[length++] = b;
+            if (b == SEPARATOR) {
+                buffer[length++] = ESCAPE;
+            }
+        }
+        writeTerminator();
+        return this;
+    }
+
+    /**
+     * Appends the bytes as they are, with no escape or terminator, so they can only be the last
+     * component of a key.
+     */
+    RowKeyEncoder addUnescapedBytes(byte[] value) {
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, buffer, length, value.length);
+        length += value.length;
+        return this;
+    }
+
+    /**
+     * @return the number of bytes encoded since the last {@link #reset()}
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return a copy of the key encoded so far
+     */
+    public byte[] toBytes() {
+        byte[] key = new byte[length];
+        System.arraycopy(buffer, 0, key, 0, length);
+        return key;
+    }
+
+    /**
+     * @return the first key that sorts after every key starting with the one encoded so far, or an
+     *         empty array (the end of the table) if there is none
+     */
+    public byte[] toPrefixStopRow() {
+        int end = length;
+        while (end > 0 && buffer[end - 1] == (byte) 0xFF) {
+            end--;
+        }
+        byte[] stopRow = new byte[end];
+        System.arraycopy(buffer, 0, stopRow, 0, end);
+        if (end > 0) {
+            stopRow[end - 1]++;
+        }
+        return stopRow;
+    }
+
+    /**
+     * @return a {@link PrefixFilter} matching rows that start with the key encoded so far, for
+     *         combining with other filters. When scanning a prefix on its own,
+     *         {@link ResultScannerBuilder#withRowPrefix(RowKeyEncoder)} avoids reading rows outside
+     *         it at all.
+     */
+    public Filter toPrefixFilter() {
+        return new PrefixFilter(toBytes());
+    }
+
+    private void writeTerminator() {
+        buffer[length++] = SEPARATOR;
+        buffer[length++] = SEPARATOR;
+    }
+
+    private void writeInt(int value) {
+        buffer[length++] = (byte) (value >>> 24);
+        buffer[length++] = (byte) (value >>> 16);
+        buffer[length++] = (byte) (value >>> 8);
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void ensureCapacity(int additional) {
+        if (length + additional <= buffer.length) {
+            return;
+        }
+        byte[] grown = new byte[Math.max(buffer.length * 2, length + additional)];
+        System.arraycopy(buffer, 0, grown, 0, length);
+        buffer = grown;
+    }
+}
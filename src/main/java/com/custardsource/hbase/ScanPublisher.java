@@ -0,0 +1,186 @@
+package com.custardsource.hbase;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * <p>
+ * A single-subscriber {@link Publisher} over a {@link ScanStream}. Rows are only pulled from the
+ * scanner to satisfy outstanding demand, so a slow subscriber holds back the scan instead of
+ * buffering it in memory.
+ * </p>
+ * <p>
+ * All signals to the subscriber come from a single drain loop run on the given {@link Executor}.
+ * Calls to request() or cancel() made while the loop is running (including from within onNext)
+ * are picked up by the running loop rather than re-entering it. Cancelling, completing or failing
+ * closes the underlying scanner.
+ * </p>
+ * <p>
+ * The reactive-streams dependency is optional, so it is only needed on the classpath by
+ * applications that use this class. Examples:
+ * </p>
+ *
+ * <pre>
+ * Publisher&lt;Result&gt; rows = ScanPublisher.of(new ResultScannerBuilder(table).stream(), executor);
+ * </pre>
+ *
+ * @param <T>
+ */
+public class ScanPublisher<T> implements Publisher<T> {
+
+    private final ScanStream<T> stream;
+    private final Executor executor;
+    private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+    private ScanPublisher(ScanStream<T> stream, Executor executor) {
+        this.stream = stream;
+        this.executor = executor;
+    }
+
+    /**
+     * @return a single-subscriber {@link Publisher} emitting the stream's elements only as they are
+     *         requested, pulling them on the thread calling request()
+     */
+    public static <T> Publisher<T> of(ScanStream<T> stream) {
+        return of(stream, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * @return a single-subscriber {@link Publisher} emitting the stream's elements only as they are
+     *         requested, pulling them (and so blocking on the scanner) on the given
+     *         {@link Executor}
+     */
+    public static <T> Publisher<T> of(ScanStream<T> stream, Executor executor) {
+        Preconditions.checkNotNull(stream);
+        Preconditions.checkNotNull(executor);
+        return new ScanPublisher<T>(stream, executor);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        Preconditions.checkNotNull(subscriber);
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                    "A ScanStream publisher only supports a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new ScanSubscription(subscriber));
+    }
+
+    private class ScanSubscription implements Subscription, Runnable {
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private volatile Throwable invalidRequest = null;
+
+        // only touched from within the drain loop
+        private Iterator<T> iterator;
+        private boolean done = false;
+
+        ScanSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException(
+                        "request must be for a positive number of elements, was " + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!requested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (done) {
+                return;
+            }
+            try {
+                long demand = requested.get();
+                long emitted = 0;
+                while (true) {
+                    if (cancelled) {
+                        finish();
+                        return;
+                    }
+                    if (invalidRequest != null) {
+                        finish();
+                        subscriber.onError(invalidRequest);
+                        return;
+                    }
+                    if (emitted == demand) {
+                        break;
+                    }
+                    if (iterator == null) {
+                        iterator = stream.iterator();
+                    }
+                    if (!iterator.hasNext()) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    subscriber.onNext(iterator.next());
+                    emitted++;
+                }
+                if (demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+            } catch (RuntimeException e) {
+                finish();
+                subscriber.onError(e);
+            }
+        }
+
+        private void finish() {
+            done = true;
+            stream.close();
+        }
+    }
+}
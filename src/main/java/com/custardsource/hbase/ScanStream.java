@@ -0,0 +1,385 @@
+package com.custardsource.hbase;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+
+/**
+ * <p>
+ * A lazily evaluated, composable view over the rows of a scan. Stages (map, filter, limit, batch
+ * and parallel map) are only applied as rows are pulled, and rows are only fetched from the region
+ * servers as they are needed, so arbitrarily large scans can be processed in bounded memory.
+ * </p>
+ * <p>
+ * The underlying {@link ResultScanner} is opened on the first call to {@link #iterator()} (a
+ * stream may only be iterated once) and is closed as soon as the scan is exhausted, a
+ * {@link #limit(long)} is reached, any stage (or the {@link ResultScanner} itself) throws or a
+ * subscriber to a {@link ScanPublisher} cancels. The terminal operations
+ * {@link #forEach(Function)} and {@link #drainTo(Collection)} always close it, however they end.
+ * Callers that iterate themselves and may stop early (a <code>break</code> out of a for-each loop,
+ * say) must {@link #close()} the stream, which is always safe to call.
+ * </p>
+ * <p>
+ * Examples:
+ * </p>
+ *
+ * <pre>
+ * ScanStream&lt;NavigableMap&lt;String, String&gt;&gt; rows = new ResultScannerBuilder(table)
+ *         .withColumnFamilies(&quot;family&quot;).stream().map(ResultTransformer.stringsFunction(&quot;family&quot;))
+ *         .limit(1000);
+ * try {
+ *     for (NavigableMap&lt;String, String&gt; row : rows) {
+ *         ...
+ *     }
+ * } finally {
+ *     rows.close();
+ * }
+ * </pre>
+ *
+ * @param <T>
+ */
+public class ScanStream<T> implements Iterable<T>, Closeable {
+
+    private final ScanSource source;
+    private final Supplier<Iterator<T>> iterators;
+
+    private ScanStream(ScanSource source, Supplier<Iterator<T>> iterators) {
+        this.source = source;
+        this.iterators = iterators;
+    }
+
+    /**
+     * @return a stream of the {@link Result}s the builder would scan
+     */
+    static ScanStream<Result> of(ResultScannerBuilder scannerBuilder) {
+        final ScanSource source = new ScanSource(scannerBuilder);
+        return new ScanStream<Result>(source, new Supplier<Iterator<Result>>() {
+            @Override
+            public Iterator<Result> get() {
+                return source.open();
+            }
+        });
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new ClosingIterator<T>(source, iterators.get());
+    }
+
+    /**
+     * Applies the action to every element, closing the scanner once the stream is exhausted or the
+     * action throws.
+     */
+    public void forEach(Function<? super T, ?> action) {
+        try {
+            for (T element : this) {
+                action.apply(element);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Adds every element to the collection, closing the scanner however the stream ends.
+     *
+     * @return the collection
+     */
+    public <C extends Collection<? super T>> C drainTo(C collection) {
+        try {
+            for (T element : this) {
+                collection.add(element);
+            }
+        } finally {
+            close();
+        }
+        return collection;
+    }
+
+    /**
+     * Closes the underlying scanner, if it has been opened. Iteration ends at the next call to
+     * hasNext().
+     */
+    @Override
+    public void close() {
+        source.close();
+    }
+
+    public <R> ScanStream<R> map(final Function<? super T, ? extends R> function) {
+        return new ScanStream<R>(source, new Supplier<Iterator<R>>() {
+            @Override
+            public Iterator<R> get() {
+                return Iterators.<T, R> transform(iterators.get(), function);
+            }
+        });
+    }
+
+    public ScanStream<T> filter(final Predicate<? super T> predicate) {
+        return new ScanStream<T>(source, new Supplier<Iterator<T>>() {
+            @Override
+            public Iterator<T> get() {
+                return Iterators.filter(iterators.get(), predicate);
+            }
+        });
+    }
+
+    /**
+     * Ends the stream after at most <code>maxElements</code>, closing the scanner as soon as the
+     * limit is reached rather than leaving it open on the region server until it times out.
+     */
+    public ScanStream<T> limit(final long maxElements) {
+        Preconditions.checkArgument(maxElements >= 0, "maxElements must not be negative");
+        return new ScanStream<T>(source, new Supplier<Iterator<T>>() {
+            @Override
+            public Iterator<T> get() {
+                final Iterator<T> upstream = iterators.get();
+                return new AbstractIterator<T>() {
+                    private long count = 0;
+
+                    @Override
+                    protected T computeNext() {
+                        if (count >= maxElements) {
+                            source.close();
+                            return endOfData();
+                        }
+                        if (!upstream.hasNext()) {
+                            return endOfData();
+                        }
+                        count++;
+                        return upstream.next();
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Groups consecutive elements into lists of <code>size</code>, the last of which may be
+     * smaller.
+     */
+    public ScanStream<List<T>> batch(final int size) {
+        Preconditions.checkArgument(size > 0, "size must be positive");
+        return new ScanStream<List<T>>(source, new Supplier<Iterator<List<T>>>() {
+            @Override
+            public Iterator<List<T>> get() {
+                return Iterators.partition(iterators.get(), size);
+            }
+        });
+    }
+
+    /**
+     * Applies the function on the given {@link ExecutorService}, with at most
+     * <code>parallelism</code> elements in flight at once. Output order matches input order, and
+     * memory stays bounded by the parallelism. A failure of the function ends the stream, closes
+     * the scanner and is propagated as a {@link RuntimeException}.
+     */
+    public <R> ScanStream<R> parallelMap(final Function<? super T, ? extends R> function,
+            final ExecutorService executorService, final int parallelism) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        return new ScanStream<R>(source, new Supplier<Iterator<R>>() {
+            @Override
+            public Iterator<R> get() {
+                return new ParallelMapIterator<T, R>(source, iterators.get(), function,
+                        executorService, parallelism);
+            }
+        });
+    }
+
+    /**
+     * Owns the lazily opened {@link ResultScanner} shared by every stage of a stream. A client
+     * scanner is not thread safe, so a {@link #close()} from another thread (a cancelling
+     * subscriber, say) while a row is being fetched only marks the source closed, and the
+     * iterating thread closes the scanner once the fetch returns.
+     */
+    private static class ScanSource {
+        private final ResultScannerBuilder scannerBuilder;
+        // both guarded by this
+        private ResultScanner scanner;
+        private boolean fetching = false;
+        private volatile boolean closed = false;
+
+        ScanSource(ResultScannerBuilder scannerBuilder) {
+            this.scannerBuilder = scannerBuilder;
+        }
+
+        synchronized Iterator<Result> open() {
+            Preconditions.checkState(scanner == null && !closed,
+                    "A ScanStream can only be iterated once");
+            try {
+                scanner = scannerBuilder.build();
+            } catch (IOException e) {
+                closed = true;
+                throw new RuntimeException(e);
+            }
+            return new AbstractIterator<Result>() {
+                @Override
+                protected Result computeNext() {
+                    ResultScanner current;
+                    synchronized (ScanSource.this) {
+                        if (closed) {
+                            return endOfData();
+                        }
+                        current = scanner;
+                        fetching = true;
+                    }
+                    Result result;
+                    try {
+                        result = current.next();
+                    } catch (IOException e) {
+                        close();
+                        throw new RuntimeException(e);
+                    } finally {
+                        fetched();
+                    }
+                    if (result == null) {
+                        close();
+                        return endOfData();
+                    }
+                    return result;
+                }
+            };
+        }
+
+        synchronized void close() {
+            closed = true;
+            if (!fetching) {
+                closeScanner();
+            }
+        }
+
+        /**
+         * Completes a close() that arrived while the row was being fetched.
+         */
+        private synchronized void fetched() {
+            fetching = false;
+            if (closed) {
+                closeScanner();
+            }
+        }
+
+        private void closeScanner() {
+            if (scanner != null) {
+                scanner.close();
+                scanner = null;
+            }
+        }
+    }
+
+    /**
+     * Wraps the outermost stage, closing the scanner if any stage throws, as the caller is
+     * unlikely to carry on iterating.
+     */
+    private static class ClosingIterator<T> implements Iterator<T> {
+        private final ScanSource source;
+        private final Iterator<T> upstream;
+
+        ClosingIterator(ScanSource source, Iterator<T> upstream) {
+            this.source = source;
+            this.upstream = upstream;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean completed = false;
+            try {
+                boolean hasNext = upstream.hasNext();
+                completed = true;
+                return hasNext;
+            } finally {
+                if (!completed) {
+                    source.close();
+                }
+            }
+        }
+
+        @Override
+        public T next() {
+            boolean completed = false;
+            try {
+                T next = upstream.next();
+                completed = true;
+                return next;
+            } finally {
+                if (!completed) {
+                    source.close();
+                }
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class ParallelMapIterator<T, R> extends AbstractIterator<R> {
+        private final ScanSource source;
+        private final Iterator<T> upstream;
+        private final Function<? super T, ? extends R> function;
+        private final ExecutorService executorService;
+        private final int parallelism;
+        private final LinkedList<Future<R>> inFlight = new LinkedList<Future<R>>();
+
+        ParallelMapIterator(ScanSource source, Iterator<T> upstream,
+                Function<? super T, ? extends R> function, ExecutorService executorService,
+                int parallelism) {
+            this.source = source;
+            this.upstream = upstream;
+            this.function = function;
+            this.executorService = executorService;
+            this.parallelism = parallelism;
+        }
+
+        @Override
+        protected R computeNext() {
+            while (inFlight.size() < parallelism && upstream.hasNext()) {
+                final T element = upstream.next();
+                inFlight.add(executorService.submit(new Callable<R>() {
+                    @Override
+                    public R call() {
+                        return function.apply(element);
+                    }
+                }));
+            }
+            if (inFlight.isEmpty()) {
+                return endOfData();
+            }
+
+            try {
+                return inFlight.removeFirst().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandon();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                abandon();
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        private void abandon() {
+            for (Future<R> future : inFlight) {
+                future.cancel(true);
+            }
+            inFlight.clear();
+            source.close();
+        }
+    }
+}
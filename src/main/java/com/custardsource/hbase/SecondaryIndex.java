@@ -0,0 +1,162 @@
+package com.custardsource.hbase;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * <p>
+ * An opt-in secondary index over declared (family, qualifier) columns, maintained in a companion
+ * table. When attached to a {@link PutBuilder}, every Put to an indexed column produces an index
+ * row, written to the index table in the same {@link PutBuilder#putAll()} just before the data
+ * itself. {@link IndexQuery} turns equality and range predicates on an indexed column into a scan
+ * of the index followed by batched Gets of the data rows.
+ * </p>
+ * <p>
+ * Each index row key is the indexed column's family and qualifier, the value and the data row key,
+ * encoded as by {@link RowKeyEncoder#addBytes(byte[])}:
+ * </p>
+ *
+ * <pre>
+ * escaped(family) 0x00 0x00 escaped(qualifier) 0x00 0x00 escaped(value) 0x00 0x00 dataRowKey
+ * </pre>
+ * <p>
+ * where 0x00 bytes are escaped as 0x00 0xFF, so index rows sort by value exactly as the raw value
+ * bytes do, and one value is never mistaken for a prefix of another. Range lookups
+ * are therefore only meaningful when the value's byte encoding sorts the way the values should
+ * (Strings, or non-negative numbers from {@link Bytes}).
+ * </p>
+ * <p>
+ * The index is never read before writing, so overwriting a value leaves the old index row behind.
+ * {@link IndexQuery} checks every fetched data row against the predicate and drops such stale
+ * entries.
+ * </p>
+ * <p>
+ * Examples:
+ * </p>
+ *
+ * <pre>
+ * SecondaryIndex index = new SecondaryIndex(indexTable).withIndexedColumn(&quot;user&quot;, &quot;email&quot;);
+ * new PutBuilder(userTable).withSecondaryIndex(index).withRowKey(userId).withColumnFamily(&quot;user&quot;)
+ *         .put(&quot;email&quot;, email).putAll();
+ * List&lt;Result&gt; users = index.stringQuery(userTable).withColumnFamily(&quot;user&quot;).column(&quot;email&quot;)
+ *         .valueMustEqual(email).find();
+ * </pre>
+ */
+public class SecondaryIndex {
+
+    /**
+     * The column family the index table must have
+     */
+    public static final String INDEX_FAMILY = "i";
+    static final byte[] INDEX_FAMILY_BYTES = Bytes.toBytes(INDEX_FAMILY);
+
+    /**
+     * The qualifier of the single cell in each index row, holding the data row key
+     */
+    static final byte[] ROW_QUALIFIER = Bytes.toBytes("r");
+
+    private final HTable indexTable;
+    // qualifiers by family
+    private final Map<byte[], Set<byte[]>> indexedColumns = Maps
+            .newTreeMap(Bytes.BYTES_COMPARATOR);
+
+    public SecondaryIndex(HTable indexTable) {
+        Preconditions.checkNotNull(indexTable);
+        this.indexTable = indexTable;
+    }
+
+    public SecondaryIndex withIndexedColumn(String family, String qualifier) {
+        byte[] familyBytes = Bytes.toBytes(family);
+        Set<byte[]> qualifiers = indexedColumns.get(familyBytes);
+        if (qualifiers == null) {
+            qualifiers = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
+            indexedColumns.put(familyBytes, qualifiers);
+        }
+        qualifiers.add(Bytes.toBytes(qualifier));
+        return this;
+    }
+
+    public HTable getIndexTable() {
+        return indexTable;
+    }
+
+    public boolean isIndexed(byte[] family, byte[] qualifier) {
+        Set<byte[]> qualifiers = indexedColumns.get(family);
+        return qualifiers != null && qualifiers.contains(qualifier);
+    }
+
+    public IndexQuery<String, String> stringQuery(HTable dataTable) {
+        return new IndexQuery<String, String>(this, dataTable, HBaseFunctions.STRING_TO_BYTES,
+                HBaseFunctions.STRING_TO_BYTES);
+    }
+
+    /**
+     * @return the index Puts for every cell in the given Puts that belongs to an indexed column
+     */
+    public List<Put> indexPutsFor(List<Put> puts) {
+        List<Put> indexPuts = Lists.newArrayList();
+        RowKeyEncoder encoder = new RowKeyEncoder();
+        for (Put put : puts) {
+            for (List<KeyValue> keyValues : put.getFamilyMap().values()) {
+                for (KeyValue keyValue : keyValues) {
+                    byte[] family = keyValue.getFamily();
+                    byte[] qualifier = keyValue.getQualifier();
+                    if (!isIndexed(family, qualifier)) {
+                        continue;
+                    }
+                    Put indexPut = new Put(valuePrefix(encoder, family, qualifier,
+                            keyValue.getValue()).addUnescapedBytes(put.getRow()).toBytes());
+                    indexPut.add(INDEX_FAMILY_BYTES, ROW_QUALIFIER, keyValue.getTimestamp(), put
+                            .getRow());
+                    indexPuts.add(indexPut);
+                }
+            }
+        }
+        return indexPuts;
+    }
+
+    /**
+     * @return the data row key held by an index Put from {@link #indexPutsFor(List)}
+     */
+    static byte[] dataRowKey(Put indexPut) {
+        return indexPut.get(INDEX_FAMILY_BYTES, ROW_QUALIFIER).get(0).getValue();
+    }
+
+    static byte[] indexRowKey(byte[] family, byte[] qualifier, byte[] value, byte[] dataRowKey) {
+        return valuePrefix(new RowKeyEncoder(), family, qualifier, value).addUnescapedBytes(
+                dataRowKey).toBytes();
+    }
+
+    /**
+     * @return the first index row key that could hold the given value
+     */
+    static byte[] startOfValue(byte[] family, byte[] qualifier, byte[] value) {
+        return valuePrefix(new RowKeyEncoder(), family, qualifier, value).toBytes();
+    }
+
+    /**
+     * @return the first index row key after every row holding the given value
+     */
+    static byte[] endOfValue(byte[] family, byte[] qualifier, byte[] value) {
+        byte[] end = startOfValue(family, qualifier, value);
+        // the value's 0x00 0x00 terminator becomes 0x00 0x01
+        end[end.length - 1]++;
+        return end;
+    }
+
+    private static RowKeyEncoder valuePrefix(RowKeyEncoder encoder, byte[] family,
+            byte[] qualifier, byte[] value) {
+        return encoder.reset().addBytes(family).addBytes(qualifier).addBytes(value);
+    }
+}
@@ -0,0 +1,74 @@
+package com.custardsource.hbase;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * The (timestamp, value) versions of a single cell, in ascending timestamp order, as decoded by
+ * {@link VersionedResultTransformer}. Points are held in a pair of primitive arrays rather than as
+ * boxed map entries, so a series of thousands of versions costs little more than the arrays
+ * themselves.
+ * </p>
+ * <p>
+ * When downsampled, each point is one window: its timestamp is the start of the window and its
+ * value the {@link Downsampling} of the versions that fell within it.
+ * </p>
+ */
+public class TimeSeries {
+
+    private final long[] timestamps;
+    private final double[] values;
+
+    TimeSeries(long[] timestamps, double[] values) {
+        Preconditions.checkArgument(timestamps.length == values.length,
+                "timestamps and values must be the same length");
+        this.timestamps = timestamps;
+        this.values = values;
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    public boolean isEmpty() {
+        return timestamps.length == 0;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return the value of the newest point
+     */
+    public double getLatestValue() {
+        Preconditions.checkState(!isEmpty(), "The series is empty");
+        return values[values.length - 1];
+    }
+
+    /**
+     * @return a copy of the timestamps, oldest first
+     */
+    public long[] getTimestamps() {
+        return timestamps.clone();
+    }
+
+    /**
+     * @return a copy of the values, in the same order as {@link #getTimestamps()}
+     */
+    public double[] getValues() {
+        return values.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "TimeSeries[timestamps=" + Arrays.toString(timestamps) + ", values="
+                + Arrays.toString(values) + "]";
+    }
+}
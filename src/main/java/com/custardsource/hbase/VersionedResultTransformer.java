@@ -0,0 +1,213 @@
+package com.custardsource.hbase;
+
+import java.util.NavigableMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * <p>
+ * The version-aware counterpart to {@link ResultTransformer}. Where
+ * {@link Result#getFamilyMap(byte[])} keeps only the latest version of each cell, this exposes
+ * every version returned for a column family as a {@link TimeSeries} per qualifier, so history kept
+ * with {@link TableBuilder#withMaxVersions(int)} can be read with a single Get or scan rather than
+ * a Get per version.
+ * </p>
+ * <p>
+ * Cells are decoded straight from {@link Result#raw()} without building the nested per-version
+ * maps of {@link Result#getMap()}. An optional {@link Downsampling} combines the versions within
+ * each fixed window into one point as they are decoded, so only the downsampled series is ever
+ * held in memory.
+ * </p>
+ * <p>
+ * The scan or Get must ask for more than one version, see
+ * {@link ResultScannerBuilder#withMaxVersions(int)} and
+ * {@link ResultScannerBuilder#withTimeRange(long, long)}. Once configured, a transformer may be
+ * shared between threads. Examples:
+ * </p>
+ *
+ * <pre>
+ * VersionedResultTransformer&lt;String&gt; transformer = VersionedResultTransformer.forStrings(&quot;m&quot;,
+ *         HBaseFunctions.BYTES_TO_DOUBLE).withDownsampling(1, TimeUnit.MINUTES, Downsampling.MEAN);
+ * ScanStream&lt;NavigableMap&lt;String, TimeSeries&gt;&gt; history = new ResultScannerBuilder(table)
+ *         .withAllVersions().withTimeRange(from, to).stream().map(transformer.function());
+ * </pre>
+ *
+ * @param <KEY>
+ */
+public class VersionedResultTransformer<KEY extends Comparable<?>> {
+
+    private final byte[] columnFamily;
+    private final Function<byte[], KEY> keyTransformer;
+    private final Function<byte[], ? extends Number> valueTransformer;
+
+    private long windowMillis = 0;
+    private Downsampling downsampling = null;
+
+    public VersionedResultTransformer(String columnFamily, Function<byte[], KEY> keyTransformer,
+            Function<byte[], ? extends Number> valueTransformer) {
+        this.columnFamily = Bytes.toBytes(columnFamily);
+        this.keyTransformer = keyTransformer;
+        this.valueTransformer = valueTransformer;
+    }
+
+    public static VersionedResultTransformer<String> forStrings(String columnFamily,
+            Function<byte[], ? extends Number> valueTransformer) {
+        return new VersionedResultTransformer<String>(columnFamily, HBaseFunctions.BYTES_TO_STRING,
+                valueTransformer);
+    }
+
+    /**
+     * Combines the versions of each cell into one point per window of the given length, aligned to
+     * the epoch. Each point is stamped with the start of its window.
+     */
+    public VersionedResultTransformer<KEY> withDownsampling(long window, TimeUnit unit,
+            Downsampling downsampling) {
+        Preconditions.checkNotNull(downsampling);
+        long windowMillis = unit.toMillis(window);
+        Preconditions.checkArgument(windowMillis > 0, "window must be at least a millisecond");
+        this.windowMillis = windowMillis;
+        this.downsampling = downsampling;
+        return this;
+    }
+
+    public NavigableMap<KEY, TimeSeries> transform(Result result) {
+        NavigableMap<KEY, TimeSeries> transformedMap = Maps.newTreeMap();
+        KeyValue[] keyValues = result.raw();
+        if (keyValues == null) {
+            return transformedMap;
+        }
+
+        // raw() is sorted by family, then qualifier, then newest version first
+        SeriesDecoder decoder = new SeriesDecoder();
+        byte[] currentQualifier = null;
+        for (KeyValue keyValue : keyValues) {
+            if (!keyValue.matchingFamily(columnFamily)) {
+                continue;
+            }
+            if (currentQualifier == null || !keyValue.matchingQualifier(currentQualifier)) {
+                if (currentQualifier != null) {
+                    transformedMap.put(keyTransformer.apply(currentQualifier), decoder.finish());
+                }
+                currentQualifier = keyValue.getQualifier();
+            }
+            decoder.add(keyValue.getTimestamp(), valueTransformer.apply(keyValue.getValue())
+                    .doubleValue());
+        }
+        if (currentQualifier != null) {
+            transformedMap.put(keyTransformer.apply(currentQualifier), decoder.finish());
+        }
+        return transformedMap;
+    }
+
+    /**
+     * @return a {@link Function} applying {@link #transform(Result)}, suitable for
+     *         {@link ScanStream#map(Function)}
+     */
+    public Function<Result, NavigableMap<KEY, TimeSeries>> function() {
+        return new Function<Result, NavigableMap<KEY, TimeSeries>>() {
+            @Override
+            public NavigableMap<KEY, TimeSeries> apply(Result result) {
+                return transform(result);
+            }
+        };
+    }
+
+    /**
+     * Accumulates the versions of one qualifier, newest first, downsampling them if configured,
+     * and hands back the series oldest first. The arrays are reused for every qualifier of a
+     * Result.
+     */
+    private class SeriesDecoder {
+        private long[] timestamps = new long[16];
+        private double[] values = new double[16];
+        private int size = 0;
+
+        private long windowStart;
+        private long count = 0;
+        private double sum;
+        private double min;
+        private double max;
+        private double newest;
+
+        void add(long timestamp, double value) {
+            if (downsampling == null) {
+                append(timestamp, value);
+                return;
+            }
+            long start = timestamp - ((timestamp % windowMillis) + windowMillis) % windowMillis;
+            if (count > 0 && start != windowStart) {
+                closeWindow();
+            }
+            if (count == 0) {
+                windowStart = start;
+                sum = 0;
+                min = Double.POSITIVE_INFINITY;
+                max = Double.NEGATIVE_INFINITY;
+                newest = value;
+            }
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        TimeSeries finish() {
+            if (count > 0) {
+                closeWindow();
+            }
+            long[] seriesTimestamps = new long[size];
+            double[] seriesValues = new double[size];
+            for (int i = 0; i < size; i++) {
+                seriesTimestamps[i] = timestamps[size - 1 - i];
+                seriesValues[i] = values[size - 1 - i];
+            }
+            size = 0;
+            return new TimeSeries(seriesTimestamps, seriesValues);
+        }
+
+        private void closeWindow() {
+            append(windowStart, downsampledValue());
+            count = 0;
+        }
+
+        private double downsampledValue() {
+            switch (downsampling) {
+            case MEAN:
+                return sum / count;
+            case SUM:
+                return sum;
+            case MIN:
+                return min;
+            case MAX:
+                return max;
+            case COUNT:
+                return count;
+            case LAST:
+                return newest;
+            default:
+                throw new IllegalStateException("Unknown downsampling " + downsampling);
+            }
+        }
+
+        private void append(long timestamp, double value) {
+            if (size == timestamps.length) {
+                long[] grownTimestamps = new long[size * 2];
+                double[] grownValues = new double[size * 2];
+                System.arraycopy(timestamps, 0, grownTimestamps, 0, size);
+                System.arraycopy(values, 0, grownValues, 0, size);
+                timestamps = grownTimestamps;
+                values = grownValues;
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.custardsource.hbase;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.client.Put;
+
+import com.custardsource.hbase.metrics.CellSizes;
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A client-side token bucket limiting the rate of writes, in either cells or bytes per second.
+ * Share a single instance across every thread (and {@link PutBuilder}) writing to a cluster to cap
+ * their combined rate, so that a backfill cannot push region servers into memstore blocking.
+ * </p>
+ * <p>
+ * The bucket holds at most one second's worth of permits. A batch larger than that is admitted
+ * once the bucket has been drawn down, with subsequent callers waiting off the deficit, so even
+ * very large batches are never starved. {@link PutBuilder#putAll()} never relies on this: it splits
+ * its Puts so that no batch exceeds one second's worth, and region servers never receive a burst
+ * larger than the configured rate.
+ * </p>
+ * <p>
+ * Examples:
+ * </p>
+ *
+ * <pre>
+ * WriteRateLimiter limiter = WriteRateLimiter.cellsPerSecond(50000);
+ * new PutBuilder(hTable).withRateLimiter(limiter)...putAll();
+ * </pre>
+ */
+public class WriteRateLimiter {
+
+    public enum Unit {
+        CELLS, BYTES
+    }
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Unit unit;
+    private final double permitsPerNano;
+    private final double maxPermits;
+
+    private double availablePermits;
+    private long lastRefillNanos;
+
+    public WriteRateLimiter(Unit unit, long permitsPerSecond) {
+        Preconditions.checkNotNull(unit);
+        Preconditions.checkArgument(permitsPerSecond > 0, "permitsPerSecond must be positive");
+        this.unit = unit;
+        this.permitsPerNano = (double) permitsPerSecond / NANOS_PER_SECOND;
+        this.maxPermits = permitsPerSecond;
+        this.availablePermits = maxPermits;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public static WriteRateLimiter cellsPerSecond(long cellsPerSecond) {
+        return new WriteRateLimiter(Unit.CELLS, cellsPerSecond);
+    }
+
+    public static WriteRateLimiter bytesPerSecond(long bytesPerSecond) {
+        return new WriteRateLimiter(Unit.BYTES, bytesPerSecond);
+    }
+
+    /**
+     * Blocks until the given Puts may be sent.
+     *
+     * @param puts
+     */
+    public void acquire(Collection<Put> puts) {
+        acquire(permits(puts));
+    }
+
+    /**
+     * @return the cells or bytes in the Puts, whichever this limiter counts
+     */
+    long permits(Collection<Put> puts) {
+        return unit == Unit.CELLS ? CellSizes.cellCount(puts) : CellSizes.byteSize(puts);
+    }
+
+    /**
+     * Blocks until the given number of cells or bytes may be sent.
+     *
+     * @param permits
+     */
+    public void acquire(long permits) {
+        long waitNanos = reserve(permits, System.nanoTime());
+        if (waitNanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Takes the permits, going into deficit if there are not enough.
+     *
+     * @return how long the caller must wait for the deficit to be repaid
+     */
+    synchronized long reserve(long permits, long nowNanos) {
+        if (nowNanos > lastRefillNanos) {
+            availablePermits = Math.min(maxPermits, availablePermits
+                    + (nowNanos - lastRefillNanos) * permitsPerNano);
+            lastRefillNanos = nowNanos;
+        }
+        availablePermits -= permits;
+        return availablePermits >= 0 ? 0 : (long) (-availablePermits / permitsPerNano);
+    }
+
+    /**
+     * @return the end (exclusive) of the longest run of Puts from <code>from</code>, and ending no
+     *         later than <code>to</code>, that fits within one second's permits. The run always
+     *         includes at least one Put.
+     */
+    int endOfBatch(List<Put> puts, int from, int to) {
+        long permits = 0;
+        int end = from;
+        while (end < to) {
+            Put put = puts.get(end);
+            permits += unit == Unit.CELLS ? CellSizes.cellCount(put) : CellSizes.byteSize(put);
+            if (permits > maxPermits && end > from) {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    public Unit getUnit() {
+        return unit;
+    }
+}
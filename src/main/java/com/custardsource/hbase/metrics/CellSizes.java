@@ -0,0 +1,68 @@
+package com.custardsource.hbase.metrics;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+
+/**
+ * Counting helpers for the cells and bytes carried by {@link Put}s and {@link Result}s, used when
+ * recording {@link ClientMetrics}. Bytes are the serialized {@link KeyValue} lengths, which is
+ * what actually crosses the wire.
+ */
+public final class CellSizes {
+
+    private CellSizes() {
+    }
+
+    public static int cellCount(Collection<Put> puts) {
+        int cells = 0;
+        for (Put put : puts) {
+            cells += cellCount(put);
+        }
+        return cells;
+    }
+
+    public static int cellCount(Put put) {
+        int cells = 0;
+        for (List<KeyValue> keyValues : put.getFamilyMap().values()) {
+            cells += keyValues.size();
+        }
+        return cells;
+    }
+
+    public static long byteSize(Collection<Put> puts) {
+        long bytes = 0;
+        for (Put put : puts) {
+            bytes += byteSize(put);
+        }
+        return bytes;
+    }
+
+    public static long byteSize(Put put) {
+        long bytes = 0;
+        for (List<KeyValue> keyValues : put.getFamilyMap().values()) {
+            for (KeyValue keyValue : keyValues) {
+                bytes += keyValue.getLength();
+            }
+        }
+        return bytes;
+    }
+
+    public static int cellCount(Result result) {
+        return result == null || result.isEmpty() ? 0 : result.size();
+    }
+
+    public static long byteSize(Result result) {
+        if (result == null || result.isEmpty()) {
+            return 0;
+        }
+        long bytes = 0;
+        for (KeyValue keyValue : result.raw()) {
+            bytes += keyValue.getLength();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,63 @@
+package com.custardsource.hbase.metrics;
+
+/**
+ * <p>
+ * Pluggable sink for client-side instrumentation of the builders in this package. Every
+ * measurement is tagged by the table name and the {@link Operation} performed.
+ * </p>
+ * <p>
+ * Callers are expected to check {@link #isEnabled()} before doing any work to compute a
+ * measurement (timing, counting cells, sizing byte[]s), so that the default
+ * {@link NoOpClientMetrics} costs no more than a single virtual call.
+ * </p>
+ * <p>
+ * Examples:
+ * </p>
+ *
+ * <pre>
+ * ClientMetrics metrics = new JmxClientMetrics();
+ * new PutBuilder(hTable).withMetrics(metrics)...putAll();
+ * ResultScanner scanner = new ResultScannerBuilder(hTable).withMetrics(metrics).build();
+ * </pre>
+ */
+public interface ClientMetrics {
+
+    /**
+     * @return false if measurements are being discarded, allowing callers to skip computing them
+     */
+    boolean isEnabled();
+
+    /**
+     * Records a single successful call.
+     *
+     * @param table
+     *            the name of the table the operation was against
+     * @param operation
+     * @param rows
+     *            the number of rows sent or received
+     * @param cells
+     *            the number of cells ({@link org.apache.hadoop.hbase.KeyValue}s) sent or received
+     * @param bytes
+     *            the number of cell bytes sent (Puts) or received (Scans)
+     * @param elapsedNanos
+     *            wall clock time spent in the call
+     */
+    void record(String table, Operation operation, int rows, int cells, long bytes,
+            long elapsedNanos);
+
+    /**
+     * Records that a call was retried.
+     *
+     * @param table
+     * @param operation
+     */
+    void recordRetry(String table, Operation operation);
+
+    /**
+     * Records that a call failed and the failure was propagated to the caller.
+     *
+     * @param table
+     * @param operation
+     */
+    void recordFailure(String table, Operation operation);
+}
@@ -0,0 +1,86 @@
+package com.custardsource.hbase.metrics;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * A {@link ResultScanner} decorator recording every call to {@link #next()} and
+ * {@link #next(int)} as an {@link Operation#SCAN}. Each call that reaches the region server
+ * (governed by the scanner caching) shows up as a latency outlier, which makes poorly sized
+ * caching easy to spot.
+ */
+public class InstrumentedResultScanner implements ResultScanner {
+
+    private final ResultScanner delegate;
+    private final String table;
+    private final ClientMetrics metrics;
+
+    public InstrumentedResultScanner(ResultScanner delegate, String table, ClientMetrics metrics) {
+        this.delegate = delegate;
+        this.table = table;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Result next() throws IOException {
+        long start = System.nanoTime();
+        Result result;
+        try {
+            result = delegate.next();
+        } catch (IOException e) {
+            metrics.recordFailure(table, Operation.SCAN);
+            throw e;
+        }
+        int rows = result == null ? 0 : 1;
+        metrics.record(table, Operation.SCAN, rows, CellSizes.cellCount(result), CellSizes
+                .byteSize(result), System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Result[] next(int nbRows) throws IOException {
+        long start = System.nanoTime();
+        Result[] results;
+        try {
+            results = delegate.next(nbRows);
+        } catch (IOException e) {
+            metrics.recordFailure(table, Operation.SCAN);
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int cells = 0;
+        long bytes = 0;
+        for (Result result : results) {
+            cells += CellSizes.cellCount(result);
+            bytes += CellSizes.byteSize(result);
+        }
+        metrics.record(table, Operation.SCAN, results.length, cells, bytes, elapsed);
+        return results;
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public Iterator<Result> iterator() {
+        return new AbstractIterator<Result>() {
+            @Override
+            protected Result computeNext() {
+                try {
+                    Result result = InstrumentedResultScanner.this.next();
+                    return result == null ? endOfData() : result;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package com.custardsource.hbase.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * <p>
+ * A {@link RecordingClientMetrics} that registers an {@link OperationMetricsMBean} for every table
+ * and {@link Operation} as soon as it is first seen, under:
+ * </p>
+ *
+ * <pre>
+ * com.custardsource.hbase:type=ClientMetrics,table=&lt;table&gt;,operation=&lt;PUT|FLUSH|SCAN&gt;
+ * </pre>
+ * <p>
+ * A name already registered, for example by another instance on the same {@link MBeanServer},
+ * is left as it is and only logged; the metrics are still recorded in memory.
+ * </p>
+ */
+public class JmxClientMetrics extends RecordingClientMetrics {
+
+    public static final String DOMAIN = "com.custardsource.hbase";
+
+    private static final Log LOG = LogFactory.getLog(JmxClientMetrics.class);
+
+    private final MBeanServer mBeanServer;
+    private final List<ObjectName> registered = new CopyOnWriteArrayList<ObjectName>();
+
+    public JmxClientMetrics() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxClientMetrics(MBeanServer mBeanServer) {
+        this.mBeanServer = mBeanServer;
+    }
+
+    @Override
+    protected void onCreated(OperationMetrics operationMetrics) {
+        ObjectName name = null;
+        try {
+            name = new ObjectName(DOMAIN + ":type=ClientMetrics,table="
+                    + ObjectName.quote(operationMetrics.getTable()) + ",operation="
+                    + operationMetrics.getOperation());
+            if (mBeanServer.isRegistered(name)) {
+                LOG.warn("Not registering " + name + ", it is already registered");
+                return;
+            }
+            mBeanServer.registerMBean(operationMetrics, name);
+            registered.add(name);
+        } catch (JMException e) {
+            LOG.warn("Could not register " + (name == null ? operationMetrics : name), e);
+        }
+    }
+
+    /**
+     * Unregisters every MBean this instance registered, any Exception caught during unregistration
+     * is swallowed.
+     */
+    public void unregisterAll() {
+        for (ObjectName name : registered) {
+            try {
+                mBeanServer.unregisterMBean(name);
+            } catch (Exception e) {
+            }
+        }
+        registered.clear();
+    }
+}
@@ -0,0 +1,77 @@
+package com.custardsource.hbase.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A lock-free, fixed size latency histogram using power-of-two microsecond buckets. Bucket 0 holds
+ * anything under 1 microsecond, bucket <i>n</i> holds latencies in [2<sup>n-1</sup>,
+ * 2<sup>n</sup>) microseconds, and the final bucket holds everything beyond that.
+ * </p>
+ * <p>
+ * Percentiles are therefore approximate, reported as the upper bound of the bucket they fall in,
+ * which is plenty to tell a 2ms call from a 200ms one.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    static final int BUCKETS = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long elapsedNanos) {
+        buckets.incrementAndGet(bucketFor(elapsedNanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(elapsedNanos);
+
+        long currentMax = maxNanos.get();
+        while (elapsedNanos > currentMax && !maxNanos.compareAndSet(currentMax, elapsedNanos)) {
+            currentMax = maxNanos.get();
+        }
+    }
+
+    static int bucketFor(long elapsedNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMeanMicros() {
+        long n = count.get();
+        return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / n);
+    }
+
+    public long getMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+    }
+
+    /**
+     * @param percentile
+     *            between 0.0 and 1.0
+     * @return the upper bound, in microseconds, of the bucket containing the given percentile
+     */
+    public long getPercentileMicros(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(percentile * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return i == BUCKETS - 1 ? getMaxMicros() : 1L << i;
+            }
+        }
+        return getMaxMicros();
+    }
+}
@@ -0,0 +1,82 @@
+package com.custardsource.hbase.metrics;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Periodically writes one log line per table and {@link Operation} recorded by a
+ * {@link RecordingClientMetrics}, at INFO level.
+ * </p>
+ * <p>
+ * Examples:
+ * </p>
+ *
+ * <pre>
+ * RecordingClientMetrics metrics = new RecordingClientMetrics();
+ * LoggingMetricsReporter reporter = new LoggingMetricsReporter(metrics);
+ * reporter.start(1, TimeUnit.MINUTES);
+ * ...
+ * reporter.stop();
+ * </pre>
+ */
+public class LoggingMetricsReporter implements Runnable {
+
+    private static final Log LOG = LogFactory.getLog(LoggingMetricsReporter.class);
+
+    private final RecordingClientMetrics metrics;
+    private final Log log;
+
+    private ScheduledExecutorService executor;
+
+    public LoggingMetricsReporter(RecordingClientMetrics metrics) {
+        this(metrics, LOG);
+    }
+
+    public LoggingMetricsReporter(RecordingClientMetrics metrics, Log log) {
+        Preconditions.checkNotNull(metrics);
+        Preconditions.checkNotNull(log);
+        this.metrics = metrics;
+        this.log = log;
+    }
+
+    /**
+     * Logs the current state of every {@link OperationMetrics}.
+     */
+    @Override
+    public void run() {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        for (OperationMetrics operationMetrics : metrics.getAll()) {
+            log.info(operationMetrics);
+        }
+    }
+
+    public synchronized void start(long period, TimeUnit unit) {
+        Preconditions.checkState(executor == null, "Reporter has already been started");
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "hbase-client-metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleAtFixedRate(this, period, period, unit);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
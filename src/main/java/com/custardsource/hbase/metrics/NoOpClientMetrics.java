@@ -0,0 +1,31 @@
+package com.custardsource.hbase.metrics;
+
+/**
+ * The default {@link ClientMetrics}, which discards everything and reports itself as disabled so
+ * callers never bother computing measurements.
+ */
+public final class NoOpClientMetrics implements ClientMetrics {
+
+    public static final NoOpClientMetrics INSTANCE = new NoOpClientMetrics();
+
+    private NoOpClientMetrics() {
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public void record(String table, Operation operation, int rows, int cells, long bytes,
+            long elapsedNanos) {
+    }
+
+    @Override
+    public void recordRetry(String table, Operation operation) {
+    }
+
+    @Override
+    public void recordFailure(String table, Operation operation) {
+    }
+}
@@ -0,0 +1,23 @@
+package com.custardsource.hbase.metrics;
+
+/**
+ * The client-side operations that are instrumented by {@link ClientMetrics}.
+ */
+public enum Operation {
+
+    /**
+     * A batch of Puts submitted via {@link org.apache.hadoop.hbase.client.HTable#put(java.util.List)}
+     */
+    PUT,
+
+    /**
+     * An explicit {@link org.apache.hadoop.hbase.client.HTable#flushCommits()} of the client-side
+     * write buffer
+     */
+    FLUSH,
+
+    /**
+     * A call to {@link org.apache.hadoop.hbase.client.ResultScanner#next()} (or the batched variant)
+     */
+    SCAN
+}
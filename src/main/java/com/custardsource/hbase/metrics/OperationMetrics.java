@@ -0,0 +1,114 @@
+package com.custardsource.hbase.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe running totals and a {@link LatencyHistogram} for a single table and
+ * {@link Operation}.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+    private final String table;
+    private final Operation operation;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong cells = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public OperationMetrics(String table, Operation operation) {
+        this.table = table;
+        this.operation = operation;
+    }
+
+    void record(int rowCount, int cellCount, long byteCount, long elapsedNanos) {
+        latency.record(elapsedNanos);
+        rows.addAndGet(rowCount);
+        cells.addAndGet(cellCount);
+        bytes.addAndGet(byteCount);
+    }
+
+    void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    void recordFailure() {
+        failures.incrementAndGet();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String getTable() {
+        return table;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation.name();
+    }
+
+    @Override
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.get();
+    }
+
+    @Override
+    public long getCells() {
+        return cells.get();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.get();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public long getMeanLatencyMicros() {
+        return latency.getMeanMicros();
+    }
+
+    @Override
+    public long getMaxLatencyMicros() {
+        return latency.getMaxMicros();
+    }
+
+    @Override
+    public long get50thPercentileLatencyMicros() {
+        return latency.getPercentileMicros(0.50);
+    }
+
+    @Override
+    public long get99thPercentileLatencyMicros() {
+        return latency.getPercentileMicros(0.99);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "table=%s op=%s calls=%d rows=%d cells=%d bytes=%d retries=%d failures=%d "
+                        + "latencyMicros[mean=%d p50=%d p99=%d max=%d]", table, operation,
+                getCalls(), getRows(), getCells(), getBytes(), getRetries(), getFailures(),
+                getMeanLatencyMicros(), get50thPercentileLatencyMicros(),
+                get99thPercentileLatencyMicros(), getMaxLatencyMicros());
+    }
+}
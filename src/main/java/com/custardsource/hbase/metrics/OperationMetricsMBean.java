@@ -0,0 +1,31 @@
+package com.custardsource.hbase.metrics;
+
+/**
+ * JMX view of the {@link OperationMetrics} for a single table and {@link Operation}.
+ */
+public interface OperationMetricsMBean {
+
+    String getTable();
+
+    String getOperation();
+
+    long getCalls();
+
+    long getRows();
+
+    long getCells();
+
+    long getBytes();
+
+    long getRetries();
+
+    long getFailures();
+
+    long getMeanLatencyMicros();
+
+    long getMaxLatencyMicros();
+
+    long get50thPercentileLatencyMicros();
+
+    long get99thPercentileLatencyMicros();
+}
@@ -0,0 +1,98 @@
+package com.custardsource.hbase.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.collect.Maps;
+
+/**
+ * <p>
+ * A {@link ClientMetrics} that accumulates measurements in memory, one {@link OperationMetrics}
+ * per table and {@link Operation}.
+ * </p>
+ * <p>
+ * On its own this is useful for tests and ad-hoc inspection; see {@link JmxClientMetrics} and
+ * {@link LoggingMetricsReporter} for ways of getting the numbers out of a running application.
+ * </p>
+ */
+public class RecordingClientMetrics implements ClientMetrics {
+
+    static final String UNKNOWN_TABLE = "unknown";
+
+    private static final Log LOG = LogFactory.getLog(RecordingClientMetrics.class);
+
+    private final ConcurrentMap<String, OperationMetrics> metrics = Maps.newConcurrentMap();
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void record(String table, Operation operation, int rows, int cells, long bytes,
+            long elapsedNanos) {
+        getOperationMetrics(table, operation).record(rows, cells, bytes, elapsedNanos);
+    }
+
+    @Override
+    public void recordRetry(String table, Operation operation) {
+        getOperationMetrics(table, operation).recordRetry();
+    }
+
+    @Override
+    public void recordFailure(String table, Operation operation) {
+        getOperationMetrics(table, operation).recordFailure();
+    }
+
+    /**
+     * @return the metrics for the given table and operation, created on first use
+     */
+    public OperationMetrics getOperationMetrics(String table, Operation operation) {
+        String tableName = table == null ? UNKNOWN_TABLE : table;
+        String key = tableName + '/' + operation.name();
+
+        OperationMetrics operationMetrics = metrics.get(key);
+        if (operationMetrics == null) {
+            OperationMetrics created = new OperationMetrics(tableName, operation);
+            operationMetrics = metrics.putIfAbsent(key, created);
+            if (operationMetrics == null) {
+                operationMetrics = created;
+                notifyCreated(created);
+            }
+        }
+        return operationMetrics;
+    }
+
+    /**
+     * Metrics must never fail the operation being measured, so anything thrown by
+     * {@link #onCreated(OperationMetrics)} is logged and otherwise ignored.
+     */
+    private void notifyCreated(OperationMetrics created) {
+        try {
+            onCreated(created);
+        } catch (RuntimeException e) {
+            LOG.warn("Could not publish metrics for " + created.getTable() + "/"
+                    + created.getOperation(), e);
+        }
+    }
+
+    /**
+     * @return a live view of every {@link OperationMetrics} recorded so far
+     */
+    public Collection<OperationMetrics> getAll() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    /**
+     * Hook for subclasses to publish newly seen table/operation combinations. Called exactly once
+     * per combination.
+     *
+     * @param operationMetrics
+     */
+    protected void onCreated(OperationMetrics operationMetrics) {
+    }
+}
@@ -0,0 +1,38 @@
+package com.custardsource.hbase;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+
+public class AdaptiveBatchSizerTest extends TestCase {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    public void testGrowsWhileFastAndHalvesWhenSlow() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 1000, 100, TimeUnit.MILLISECONDS);
+        assertEquals(100, sizer.getBatchSize());
+
+        sizer.record(FAST);
+        assertEquals(125, sizer.getBatchSize());
+        sizer.record(FAST);
+        assertEquals(156, sizer.getBatchSize());
+
+        sizer.record(SLOW);
+        assertEquals(100, sizer.getBatchSize());
+    }
+
+    public void testStaysWithinBounds() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 50, 100, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 100; i++) {
+            sizer.record(FAST);
+        }
+        assertEquals(50, sizer.getBatchSize());
+
+        for (int i = 0; i < 100; i++) {
+            sizer.record(SLOW);
+        }
+        assertEquals(10, sizer.getBatchSize());
+    }
+}
@@ -0,0 +1,646 @@
+package com.custardsource.hbase;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.objenesis.ObjenesisStd;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Sets;
+
+/**
+ * <p>
+ * A fully in-memory {@link HTable} for tests and benchmarks, covering the operations the builders in this package
+ * rely on: single and batched Puts (honouring auto-flush and the write buffer), Gets, and Scans
+ * with start/stop rows, family/column selection, max versions, time ranges, caching and any
+ * {@link Filter} (evaluated through the same callbacks a region server uses).
+ * </p>
+ * <p>
+ * Cells are kept sorted exactly as HBase sorts them. The table may be split into regions, which
+ * are reported through {@link #getStartEndKeys()} and bound every scanner RPC, and every simulated
+ * RPC can be given a fixed latency. {@link #getRpcCount()} makes batching and caching behaviour
+ * observable, {@link #getOpenScannerCount()} shows whether scanners are released, and
+ * {@link #failNextFlushes(int, String...)} simulates partial batch failures.
+ * </p>
+ * <p>
+ * {@link HTable} offers no constructor that doesn't connect to a cluster, so instances are created
+ * via Objenesis, which bypasses constructors (and field initialisers) entirely; all state is
+ * assigned in {@link #create(String, byte[][])}.
+ * </p>
+ * <p>
+ * This class is published in the hbase-utils test-jar, which the benchmarks module depends on.
+ * </p>
+ * <p>
+ * Examples:
+ * </p>
+ *
+ * <pre>
+ * InMemoryHTable table = InMemoryHTable.create(&quot;tableName&quot;, &quot;m&quot;, &quot;t&quot;).withRpcLatency(5);
+ * new PutBuilder(table).withRowKey(&quot;row&quot;).withColumnFamily(&quot;foo&quot;).put(&quot;columnA&quot;, &quot;valueA&quot;).putAll();
+ * ResultScanner scanner = new ResultScannerBuilder(table).startAt(Bytes.toBytes(&quot;a&quot;)).build();
+ * </pre>
+ */
+public class InMemoryHTable extends HTable {
+
+    private static final int DEFAULT_SCANNER_CACHING = 1;
+    private static final long DEFAULT_WRITE_BUFFER_SIZE = 2 * 1024 * 1024;
+
+    private byte[] tableName;
+    private byte[][] splitKeys;
+    private ConcurrentSkipListMap<byte[], NavigableSet<KeyValue>> rows;
+    private AtomicLong rpcCount;
+    private AtomicInteger openScanners;
+    private volatile long rpcLatencyMillis;
+    private volatile boolean discardWrites;
+    private AtomicLong discardedCells;
+
+    private boolean autoFlush;
+    private ArrayList<Put> writeBuffer;
+    private long writeBufferSize;
+    private long currentWriteBufferSize;
+
+    private AtomicInteger failingFlushes;
+    private NavigableSet<byte[]> failingRows;
+
+    /**
+     * Never invoked, see {@link #create(String, byte[][])}
+     */
+    private InMemoryHTable() throws IOException {
+        super((HBaseConfiguration) null, (byte[]) null);
+    }
+
+    public static InMemoryHTable create(String tableName, String... splitKeys) {
+        return create(tableName, HBaseFunctions.toByteArrays(splitKeys));
+    }
+
+    /**
+     * @param tableName
+     * @param splitKeys
+     *            the start key of every region after the first, if empty the table has a single
+     *            region
+     * @return
+     */
+    public static InMemoryHTable create(String tableName, byte[][] splitKeys) {
+        InMemoryHTable table = (InMemoryHTable) new ObjenesisStd()
+                .newInstance(InMemoryHTable.class);
+
+        byte[][] sortedSplitKeys = splitKeys.clone();
+        Arrays.sort(sortedSplitKeys, Bytes.BYTES_COMPARATOR);
+
+        table.tableName = Bytes.toBytes(tableName);
+        table.splitKeys = sortedSplitKeys;
+        table.rows = new ConcurrentSkipListMap<byte[], NavigableSet<KeyValue>>(
+                Bytes.BYTES_COMPARATOR);
+        table.rpcCount = new AtomicLong();
+        table.openScanners = new AtomicInteger();
+        table.autoFlush = true;
+        table.writeBuffer = new ArrayList<Put>();
+        table.writeBufferSize = DEFAULT_WRITE_BUFFER_SIZE;
+        table.failingFlushes = new AtomicInteger();
+        table.discardedCells = new AtomicLong();
+        return table;
+    }
+
+    /**
+     * Every simulated RPC sleeps for this long before being serviced.
+     *
+     * @param rpcLatencyMillis
+     * @return
+     */
+    public InMemoryHTable withRpcLatency(long rpcLatencyMillis) {
+        this.rpcLatencyMillis = rpcLatencyMillis;
+        return this;
+    }
+
+    /**
+     * {@link #put(List)} counts the cells it is given and returns, buffering and storing nothing,
+     * so a benchmark of the code building the Puts doesn't also measure this table.
+     *
+     * @return
+     */
+    public InMemoryHTable withDiscardingWrites() {
+        this.discardWrites = true;
+        return this;
+    }
+
+    /**
+     * @return the number of cells passed to {@link #put(List)} since
+     *         {@link #withDiscardingWrites()}
+     */
+    public long getDiscardedCellCount() {
+        return discardedCells.get();
+    }
+
+    public long getRpcCount() {
+        return rpcCount.get();
+    }
+
+    public void resetRpcCount() {
+        rpcCount.set(0);
+    }
+
+    /**
+     * @return the number of scanners that have been opened but not yet closed
+     */
+    public int getOpenScannerCount() {
+        return openScanners.get();
+    }
+
+    /**
+     * @return the number of rows stored, ignoring anything still in the write buffer
+     */
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    /**
+     * @return the number of cells stored (all versions), ignoring anything still in the write
+     *         buffer
+     */
+    public int getCellCount() {
+        int cells = 0;
+        for (NavigableSet<KeyValue> row : rows.values()) {
+            cells += row.size();
+        }
+        return cells;
+    }
+
+    @Override
+    public byte[] getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public byte[][] getStartKeys() {
+        byte[][] startKeys = new byte[splitKeys.length + 1][];
+        startKeys[0] = HConstants.EMPTY_START_ROW;
+        System.arraycopy(splitKeys, 0, startKeys, 1, splitKeys.length);
+        return startKeys;
+    }
+
+    @Override
+    public byte[][] getEndKeys() {
+        byte[][] endKeys = new byte[splitKeys.length + 1][];
+        System.arraycopy(splitKeys, 0, endKeys, 0, splitKeys.length);
+        endKeys[splitKeys.length] = HConstants.EMPTY_END_ROW;
+        return endKeys;
+    }
+
+    @Override
+    public Pair<byte[][], byte[][]> getStartEndKeys() {
+        return new Pair<byte[][], byte[][]>(getStartKeys(), getEndKeys());
+    }
+
+    @Override
+    public void setAutoFlush(boolean autoFlush) {
+        this.autoFlush = autoFlush;
+    }
+
+    @Override
+    public boolean isAutoFlush() {
+        return autoFlush;
+    }
+
+    @Override
+    public long getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    @Override
+    public void setWriteBufferSize(long writeBufferSize) throws IOException {
+        this.writeBufferSize = writeBufferSize;
+        if (currentWriteBufferSize > writeBufferSize) {
+            flushCommits();
+        }
+    }
+
+    @Override
+    public synchronized ArrayList<Put> getWriteBuffer() {
+        return writeBuffer;
+    }
+
+    @Override
+    public void put(Put put) throws IOException {
+        put(Collections.singletonList(put));
+    }
+
+    /**
+     * As with {@link HTable}, the Puts are added to the write buffer, which is flushed straight
+     * away when auto-flush is on, or once the buffer exceeds the write buffer size. See also
+     * {@link #withDiscardingWrites()}.
+     */
+    @Override
+    public void put(List<Put> puts) throws IOException {
+        if (discardWrites) {
+            int cells = 0;
+            for (Put put : puts) {
+                cells += put.size();
+            }
+            discardedCells.addAndGet(cells);
+            return;
+        }
+        boolean flush;
+        synchronized (this) {
+            for (Put put : puts) {
+                writeBuffer.add(put);
+                currentWriteBufferSize += put.heapSize();
+            }
+            flush = autoFlush || currentWriteBufferSize > writeBufferSize;
+        }
+        if (flush) {
+            flushCommits();
+        }
+    }
+
+    /**
+     * Applies the buffered Puts as a single RPC per region they touch. As the real client fans
+     * out to region servers in parallel, the simulated latency is only paid once.
+     */
+    @Override
+    public void flushCommits() throws IOException {
+        List<Put> toFlush;
+        synchronized (this) {
+            if (writeBuffer.isEmpty()) {
+                return;
+            }
+            toFlush = new ArrayList<Put>(writeBuffer);
+            writeBuffer.clear();
+            currentWriteBufferSize = 0;
+        }
+
+        Set<Integer> regions = Sets.newHashSet();
+        for (Put put : toFlush) {
+            regions.add(regionIndex(put.getRow()));
+        }
+        rpc(regions.size());
+
+        List<Put> failed = new ArrayList<Put>();
+        long now = System.currentTimeMillis();
+        for (Put put : toFlush) {
+            if (shouldFail(put.getRow())) {
+                failed.add(put);
+            } else {
+                store(put, now);
+            }
+        }
+
+        if (!failed.isEmpty()) {
+            failFlush(failed);
+        }
+    }
+
+    /**
+     * For the next <code>flushes</code> flushes, Puts to any of the given rows are not applied and
+     * are reported through a {@link RetriesExhaustedWithDetailsException}, as they would be when
+     * their region is unavailable. As with {@link HTable}, the failed Puts are kept in the write
+     * buffer only when auto-flush is off.
+     *
+     * @param flushes
+     * @param rowKeys
+     * @return
+     */
+    public InMemoryHTable failNextFlushes(int flushes, String... rowKeys) {
+        failingFlushes.set(flushes);
+        failingRows = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
+        failingRows.addAll(Arrays.asList(HBaseFunctions.toByteArrays(rowKeys)));
+        return this;
+    }
+
+    private boolean shouldFail(byte[] row) {
+        return failingFlushes.get() > 0 && failingRows.contains(row);
+    }
+
+    private void failFlush(List<Put> failed) throws RetriesExhaustedWithDetailsException {
+        failingFlushes.decrementAndGet();
+
+        List<Throwable> causes = new ArrayList<Throwable>();
+        List<Row> actions = new ArrayList<Row>();
+        List<String> servers = new ArrayList<String>();
+        for (Put put : failed) {
+            causes.add(new IOException("Region is not online"));
+            actions.add(put);
+            servers.add("localhost:60020");
+        }
+        if (!autoFlush) {
+            synchronized (this) {
+                writeBuffer.addAll(0, failed);
+            }
+        }
+        throw new RetriesExhaustedWithDetailsException(causes, actions, servers);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushCommits();
+    }
+
+    @Override
+    public Result get(Get get) throws IOException {
+        rpc(1);
+        return read(get.getRow(), get.getFamilyMap(), get.getMaxVersions(), get.getTimeRange(),
+                serializedCopy(get.getFilter()));
+    }
+
+    @Override
+    public Result[] get(List<Get> gets) throws IOException {
+        Set<Integer> regions = Sets.newHashSet();
+        for (Get get : gets) {
+            regions.add(regionIndex(get.getRow()));
+        }
+        rpc(regions.size());
+
+        Result[] results = new Result[gets.size()];
+        for (int i = 0; i < results.length; i++) {
+            Get get = gets.get(i);
+            results[i] = read(get.getRow(), get.getFamilyMap(), get.getMaxVersions(), get
+                    .getTimeRange(), serializedCopy(get.getFilter()));
+        }
+        return results;
+    }
+
+    @Override
+    public ResultScanner getScanner(Scan scan) throws IOException {
+        return new InMemoryScanner(scan);
+    }
+
+    /**
+     * Filters are stateful, and a real client serializes them to each region server, so every
+     * request works on its own copy rather than sharing the caller's instance.
+     */
+    private static Filter serializedCopy(Filter filter) throws IOException {
+        if (filter == null) {
+            return null;
+        }
+        DataOutputBuffer out = new DataOutputBuffer();
+        filter.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        try {
+            Filter copy = filter.getClass().newInstance();
+            copy.readFields(in);
+            return copy;
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void store(Put put, long now) {
+        byte[] row = put.getRow();
+        NavigableSet<KeyValue> cells = rows.get(row);
+        if (cells == null) {
+            NavigableSet<KeyValue> created = new ConcurrentSkipListSet<KeyValue>(
+                    KeyValue.COMPARATOR);
+            cells = rows.putIfAbsent(row, created);
+            if (cells == null) {
+                cells = created;
+            }
+        }
+        for (List<KeyValue> keyValues : put.getFamilyMap().values()) {
+            for (KeyValue keyValue : keyValues) {
+                KeyValue stored = keyValue;
+                if (keyValue.getTimestamp() == HConstants.LATEST_TIMESTAMP) {
+                    stored = new KeyValue(keyValue.getRow(), keyValue.getFamily(), keyValue
+                            .getQualifier(), now, keyValue.getValue());
+                }
+                // same coordinates and timestamp overwrite, as they would in HBase
+                cells.remove(stored);
+                cells.add(stored);
+            }
+        }
+    }
+
+    /**
+     * Emulates a region server reading a single row: column selection, time range and version
+     * limits are applied first, then the {@link Filter} callbacks in the order a region server
+     * invokes them.
+     *
+     * @return the matching cells, or null if the row is missing or filtered out entirely
+     */
+    private Result read(byte[] row, Map<byte[], NavigableSet<byte[]>> families, int maxVersions,
+            TimeRange timeRange, Filter filter) {
+        NavigableSet<KeyValue> cells = rows.get(row);
+        if (cells == null) {
+            return null;
+        }
+        if (filter != null) {
+            filter.reset();
+            if (filter.filterRowKey(row, 0, row.length)) {
+                return null;
+            }
+        }
+
+        List<KeyValue> kept = new ArrayList<KeyValue>();
+        KeyValue currentColumn = null;
+        int versions = 0;
+        boolean skipColumn = false;
+        for (KeyValue keyValue : cells) {
+            if (!isSelected(keyValue, families)
+                    || (timeRange != null && !timeRange.withinTimeRange(keyValue.getTimestamp()))) {
+                continue;
+            }
+            if (currentColumn == null
+                    || !keyValue.matchingColumn(currentColumn.getFamily(), currentColumn
+                            .getQualifier())) {
+                currentColumn = keyValue;
+                versions = 0;
+                skipColumn = false;
+            }
+            if (skipColumn || versions >= maxVersions) {
+                continue;
+            }
+            if (filter != null) {
+                Filter.ReturnCode returnCode = filter.filterKeyValue(keyValue);
+                if (returnCode == Filter.ReturnCode.NEXT_ROW) {
+                    break;
+                }
+                if (returnCode == Filter.ReturnCode.NEXT_COL) {
+                    skipColumn = true;
+                    continue;
+                }
+                if (returnCode == Filter.ReturnCode.SKIP) {
+                    continue;
+                }
+            }
+            kept.add(keyValue);
+            versions++;
+        }
+
+        if ((filter != null && filter.filterRow()) || kept.isEmpty()) {
+            return null;
+        }
+        return new Result(kept);
+    }
+
+    private static boolean isSelected(KeyValue keyValue, Map<byte[], NavigableSet<byte[]>> families) {
+        if (families == null || families.isEmpty()) {
+            return true;
+        }
+        byte[] family = keyValue.getFamily();
+        if (!families.containsKey(family)) {
+            return false;
+        }
+        NavigableSet<byte[]> qualifiers = families.get(family);
+        return qualifiers == null || qualifiers.isEmpty()
+                || qualifiers.contains(keyValue.getQualifier());
+    }
+
+    private int regionIndex(byte[] row) {
+        int index = Arrays.binarySearch(splitKeys, row, Bytes.BYTES_COMPARATOR);
+        // an exact match is the first row of the region after that split
+        return index >= 0 ? index + 1 : -(index + 1);
+    }
+
+    private void rpc(int calls) throws IOException {
+        rpcCount.addAndGet(calls);
+        if (rpcLatencyMillis > 0) {
+            try {
+                Thread.sleep(rpcLatencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    /**
+     * Fetches rows a cached batch at a time, one RPC per batch. As with the real client, a batch
+     * never spans a region boundary, and the scanner is not thread safe: closing it while another
+     * thread is in next() is rejected.
+     */
+    private class InMemoryScanner implements ResultScanner {
+
+        private final Scan scan;
+        private final Filter filter;
+        private final int caching;
+        private final PeekingIterator<Map.Entry<byte[], NavigableSet<KeyValue>>> rowIterator;
+        private final LinkedList<Result> cache = new LinkedList<Result>();
+        private boolean closed = false;
+        private boolean released = false;
+        private volatile boolean fetching = false;
+
+        InMemoryScanner(Scan scan) throws IOException {
+            this.scan = scan;
+            this.filter = serializedCopy(scan.getFilter());
+            this.caching = scan.getCaching() > 0 ? scan.getCaching() : DEFAULT_SCANNER_CACHING;
+
+            NavigableMap<byte[], NavigableSet<KeyValue>> range = rows;
+            byte[] startRow = scan.getStartRow();
+            byte[] stopRow = scan.getStopRow();
+            if (startRow != null && startRow.length > 0) {
+                range = range.tailMap(startRow, true);
+            }
+            if (stopRow != null && stopRow.length > 0) {
+                range = range.headMap(stopRow, false);
+            }
+            this.rowIterator = Iterators.peekingIterator(range.entrySet().iterator());
+            openScanners.incrementAndGet();
+        }
+
+        @Override
+        public Result next() throws IOException {
+            fetching = true;
+            try {
+                while (cache.isEmpty() && !closed && rowIterator.hasNext()) {
+                    fetch();
+                }
+                return cache.poll();
+            } finally {
+                fetching = false;
+            }
+        }
+
+        private void fetch() throws IOException {
+            rpc(1);
+            int region = regionIndex(rowIterator.peek().getKey());
+            while (cache.size() < caching && rowIterator.hasNext()
+                    && regionIndex(rowIterator.peek().getKey()) == region) {
+                if (filter != null && filter.filterAllRemaining()) {
+                    closed = true;
+                    return;
+                }
+                Map.Entry<byte[], NavigableSet<KeyValue>> row = rowIterator.next();
+                Result result = read(row.getKey(), scan.getFamilyMap(), scan.getMaxVersions(),
+                        scan.getTimeRange(), filter);
+                if (result != null) {
+                    cache.add(result);
+                }
+            }
+        }
+
+        @Override
+        public Result[] next(int nbRows) throws IOException {
+            List<Result> results = new ArrayList<Result>(nbRows);
+            for (int i = 0; i < nbRows; i++) {
+                Result result = next();
+                if (result == null) {
+                    break;
+                }
+                results.add(result);
+            }
+            return results.toArray(new Result[results.size()]);
+        }
+
+        @Override
+        public void close() {
+            if (fetching) {
+                throw new IllegalStateException("Scanner closed while next() is in progress");
+            }
+            closed = true;
+            cache.clear();
+            if (!released) {
+                released = true;
+                openScanners.decrementAndGet();
+            }
+        }
+
+        @Override
+        public Iterator<Result> iterator() {
+            return new AbstractIterator<Result>() {
+                @Override
+                protected Result computeNext() {
+                    try {
+                        Result result = InMemoryScanner.this.next();
+                        return result == null ? endOfData() : result;
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+    }
+}
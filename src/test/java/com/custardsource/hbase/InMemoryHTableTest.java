@@ -0,0 +1,124 @@
+package com.custardsource.hbase;
+
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.collect.Lists;
+
+
+public class InMemoryHTableTest extends TestCase {
+
+    private static final String FOO = "foo";
+    private static final String EEK = "eek";
+
+    private InMemoryHTable table;
+
+    @Override
+    protected void setUp() throws Exception {
+        table = InMemoryHTable.create("test", "m", "t");
+
+        PutBuilder builder = new PutBuilder(table);
+        for (String row : new String[] { "a", "f", "m", "p", "t", "z" }) {
+            builder.withRowKey(row).withColumnFamily(FOO).put("columnA", row + "A").put(
+                    "columnB", row + "B").withColumnFamily(EEK).put("columnC", row + "C");
+        }
+        builder.putAll();
+    }
+
+    public void testPutAllIsOneRpcPerRegion() throws IOException {
+        assertEquals(3, table.getRpcCount());
+        assertEquals(6, table.getRowCount());
+        assertEquals(18, table.getCellCount());
+    }
+
+    public void testGetSelectsFamilies() throws IOException {
+        Result result = table.get(new Get(Bytes.toBytes("m")).addFamily(Bytes.toBytes(FOO)));
+
+        assertEquals(2, result.size());
+        assertEquals("mA", ResultTransformer.forStrings(result, FOO).transform().get("columnA"));
+        assertTrue(result.getFamilyMap(Bytes.toBytes(EEK)).isEmpty());
+    }
+
+    public void testScanHonoursStartAndStopRows() throws IOException {
+        List<String> rows = scanRowKeys(new ResultScannerBuilder(table).startAt(Bytes.toBytes("f"))
+                .stopAt(Bytes.toBytes("t")));
+
+        assertEquals(Lists.newArrayList("f", "m", "p"), rows);
+    }
+
+    public void testScanAppliesFilterBuilderFilters() throws IOException {
+        List<String> rows = scanRowKeys(new ResultScannerBuilder(table).withFilter(FilterBuilder
+                .stringBuilder().withColumnFamily(FOO).column("columnB").valueMustEqual("pB")
+                .build()));
+
+        assertEquals(Lists.newArrayList("p"), rows);
+    }
+
+    public void testScannerBatchesNeverSpanRegions() throws IOException {
+        table.resetRpcCount();
+        Scan scan = new Scan();
+        scan.setCaching(100);
+
+        ResultScanner scanner = table.getScanner(scan);
+        int rows = 0;
+        for (Result result : scanner) {
+            rows++;
+        }
+        scanner.close();
+
+        assertEquals(6, rows);
+        assertEquals("one RPC per region", 3, table.getRpcCount());
+    }
+
+    public void testWriteBufferIsOnlyAppliedOnFlush() throws IOException {
+        table.setAutoFlush(false);
+        new PutBuilder(table).withRowKey("b").withColumnFamily(FOO).put("columnA", "bA").putAll();
+
+        assertNull(table.get(new Get(Bytes.toBytes("b"))));
+
+        HBaseUtils.flushQuietly(table);
+        assertNotNull(table.get(new Get(Bytes.toBytes("b"))));
+    }
+
+    public void testDiscardedWritesAreOnlyCounted() throws IOException {
+        InMemoryHTable discarding = InMemoryHTable.create("discarding").withDiscardingWrites();
+        new PutBuilder(discarding).withRowKey("a").withColumnFamily(FOO).put("columnA", "aA").put(
+                "columnB", "aB").putAll();
+
+        assertEquals(2, discarding.getDiscardedCellCount());
+        assertEquals(0, discarding.getRowCount());
+        assertEquals(0, discarding.getRpcCount());
+    }
+
+    public void testRegionBoundaries() {
+        byte[][] startKeys = table.getStartEndKeys().getFirst();
+        byte[][] endKeys = table.getStartEndKeys().getSecond();
+
+        assertEquals(3, startKeys.length);
+        assertEquals(0, startKeys[0].length);
+        assertEquals("m", Bytes.toString(startKeys[1]));
+        assertEquals("m", Bytes.toString(endKeys[0]));
+        assertEquals(0, endKeys[2].length);
+    }
+
+    private List<String> scanRowKeys(ResultScannerBuilder scannerBuilder) throws IOException {
+        List<String> rows = Lists.newArrayList();
+        ResultScanner scanner = scannerBuilder.build();
+        try {
+            for (Result result : scanner) {
+                rows.add(Bytes.toString(result.getRow()));
+            }
+        } finally {
+            scanner.close();
+        }
+        return rows;
+    }
+}
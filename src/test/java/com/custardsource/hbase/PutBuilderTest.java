@@ -1,5 +1,8 @@
 package com.custardsource.hbase;
 
+import com.custardsource.hbase.metrics.Operation;
+import com.custardsource.hbase.metrics.OperationMetrics;
+import com.custardsource.hbase.metrics.RecordingClientMetrics;
 import com.google.common.base.Function;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
@@ -18,8 +21,12 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 
 public class PutBuilderTest extends TestCase {
@@ -67,6 +74,82 @@ public class PutBuilderTest extends TestCase {
     }
 
 
+    public void testMetricsAreRecordedForPutAll() throws IOException {
+        when(hTable.getTableName()).thenReturn(Bytes.toBytes(FOO));
+        RecordingClientMetrics metrics = new RecordingClientMetrics();
+
+        new PutBuilder(hTable).withMetrics(metrics).withRowKey(firstRowKey).withColumnFamily(FOO)
+                .put(columnA, valueA).put(columnB, valueB).putAll();
+
+        OperationMetrics putMetrics = metrics.getOperationMetrics(FOO, Operation.PUT);
+        assertEquals(1, putMetrics.getCalls());
+        assertEquals(2, putMetrics.getRows());
+        assertEquals(2, putMetrics.getCells());
+        assertTrue(putMetrics.getBytes() > 0);
+        assertEquals(0, putMetrics.getFailures());
+    }
+
+    public void testMetricsRecordFailedPutAll() throws IOException {
+        when(hTable.getTableName()).thenReturn(Bytes.toBytes(FOO));
+        doThrow(new IOException()).when(hTable).put(anyList());
+        RecordingClientMetrics metrics = new RecordingClientMetrics();
+
+        try {
+            new PutBuilder(hTable).withMetrics(metrics).withRowKey(firstRowKey)
+                    .withColumnFamily(FOO).put(columnA, valueA).putAll();
+            fail("Should have propagated the IOException");
+        } catch (RuntimeException expected) {
+        }
+
+        OperationMetrics putMetrics = metrics.getOperationMetrics(FOO, Operation.PUT);
+        assertEquals(1, putMetrics.getCalls());
+        assertEquals(1, putMetrics.getFailures());
+    }
+
+    public void testAdaptiveBatchingSplitsPutAll() {
+        InMemoryHTable table = InMemoryHTable.create("batched");
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(2, 2, 1, TimeUnit.MINUTES);
+
+        PutBuilder builder = new PutBuilder(table).withAdaptiveBatching(sizer).withColumnFamily(FOO);
+        for (int row = 0; row < 5; row++) {
+            builder.withRowKey(row).put(columnA, valueA);
+        }
+        builder.putAll();
+
+        assertEquals("batches of 2, 2 and 1", 3, table.getRpcCount());
+        assertEquals(5, table.getRowCount());
+    }
+
+    public void testAdaptiveBatchesAreFlushedWithoutAutoFlush() {
+        InMemoryHTable table = InMemoryHTable.create("batched");
+        table.setAutoFlush(false);
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(2, 2, 1, TimeUnit.MINUTES);
+
+        PutBuilder builder = new PutBuilder(table).withAdaptiveBatching(sizer).withColumnFamily(FOO);
+        for (int row = 0; row < 5; row++) {
+            builder.withRowKey(row).put(columnA, valueA);
+        }
+        builder.putAll();
+
+        assertEquals("every batch should have been sent, not buffered", 3, table.getRpcCount());
+        assertTrue(table.getWriteBuffer().isEmpty());
+        assertEquals(5, table.getRowCount());
+    }
+
+    public void testRateLimitedBatchesAreCappedAtOneSecondOfPermits() {
+        InMemoryHTable table = InMemoryHTable.create("limited");
+
+        PutBuilder builder = new PutBuilder(table).withRateLimiter(
+                WriteRateLimiter.cellsPerSecond(2)).withColumnFamily(FOO);
+        for (int row = 0; row < 4; row++) {
+            builder.withRowKey(row).put(columnA, valueA);
+        }
+        builder.putAll();
+
+        assertEquals("two batches of 2 cells rather than one burst of 4", 2, table.getRpcCount());
+        assertEquals(4, table.getRowCount());
+    }
+
     private void assertPutExistsFor(Put put, String columnFamily, String columnQualifier, byte[] valueBytes, String valueAsString) {
         final List<KeyValue> keyValueList = put.get(Bytes.toBytes(columnFamily), Bytes.toBytes(columnQualifier));
         boolean located = false;
@@ -0,0 +1,137 @@
+package com.custardsource.hbase;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+
+public class RegionAggregatorTest extends TestCase {
+
+    private static final String STATS = "stats";
+    private static final String OTHER = "other";
+
+    private InMemoryHTable table;
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        table = InMemoryHTable.create("aggregates", "row03", "row06");
+        executor = Executors.newFixedThreadPool(3);
+
+        PutBuilder builder = new PutBuilder(table);
+        for (int i = 0; i < 10; i++) {
+            builder.withRowKey(String.format("row%02d", i)).withColumnFamily(STATS).put("bytes",
+                    (long) i * 10).put("kind", i % 2 == 0 ? "even" : "odd").withColumnFamily(
+                    OTHER).put("padding", "xxxxxxxxxxxxxxxx");
+        }
+        // a row without the aggregated column
+        builder.withRowKey("row99").withColumnFamily(OTHER).put("padding", "x");
+        builder.putAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    public void testRowCountCoversEveryRegion() throws IOException {
+        assertEquals(11, new ResultScannerBuilder(table).aggregate(executor).rowCount());
+    }
+
+    public void testRowCountHonoursStartAndStopRows() throws IOException {
+        long rows = new ResultScannerBuilder(table).startAt(Bytes.toBytes("row02")).stopAt(
+                Bytes.toBytes("row07")).aggregate(executor).rowCount();
+
+        assertEquals(5, rows);
+    }
+
+    public void testRowCountHonoursFilter() throws IOException {
+        long rows = new ResultScannerBuilder(table).withFilter(
+                FilterBuilder.stringBuilder().withColumnFamily(STATS).column("kind")
+                        .valueMustEqual("even").build()).aggregate(executor).rowCount();
+
+        assertEquals(5, rows);
+    }
+
+    public void testAggregateOverSingleColumn() throws IOException {
+        Aggregate aggregate = new ResultScannerBuilder(table).aggregate(executor).aggregate(STATS,
+                "bytes", HBaseFunctions.BYTES_TO_LONG);
+
+        assertEquals(10, aggregate.getCount());
+        assertEquals(450.0, aggregate.getSum(), 0);
+        assertEquals(0.0, aggregate.getMin(), 0);
+        assertEquals(90.0, aggregate.getMax(), 0);
+        assertEquals(45.0, aggregate.getAverage(), 0);
+        assertTrue(aggregate.isExact());
+        assertEquals(450L, aggregate.getLongSum());
+        assertEquals(0L, aggregate.getLongMin());
+        assertEquals(90L, aggregate.getLongMax());
+    }
+
+    public void testIntegralSumsAreExactBeyondDoublePrecision() {
+        long large = (1L << 53) + 1;
+        Aggregate first = new Aggregate();
+        first.add(large);
+        first.add(1L);
+        Aggregate second = new Aggregate();
+        second.add(1);
+
+        Aggregate merged = first.merge(second);
+        assertTrue(merged.isExact());
+        assertEquals(large + 2, merged.getLongSum());
+        assertEquals(1L, merged.getLongMin());
+        assertEquals(large, merged.getLongMax());
+    }
+
+    public void testSumFallsBackToDoubleOnOverflowOrFractions() {
+        Aggregate overflowed = new Aggregate();
+        overflowed.add(Long.MAX_VALUE);
+        overflowed.add(Long.MAX_VALUE);
+        assertFalse(overflowed.isExact());
+        assertEquals(2.0 * Long.MAX_VALUE, overflowed.getSum(), 0);
+
+        Aggregate fractional = new Aggregate();
+        fractional.add(1L);
+        fractional.add(0.5);
+        assertFalse(fractional.isExact());
+        assertEquals(1.5, fractional.getSum(), 0);
+        try {
+            fractional.getLongSum();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertEquals(0.5, fractional.getMin(), 0);
+        try {
+            fractional.getLongMin();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    public void testAggregateOfNothingIsNaN() throws IOException {
+        Aggregate aggregate = new ResultScannerBuilder(table).startAt(Bytes.toBytes("zzz"))
+                .aggregate(executor).aggregate(STATS, "bytes", HBaseFunctions.BYTES_TO_LONG);
+
+        assertEquals(0, aggregate.getCount());
+        assertTrue(Double.isNaN(aggregate.getAverage()));
+    }
+
+    public void testRegionScansAreClippedToTheScanRange() throws IOException {
+        List<Scan> scans = new RegionAggregator(new ResultScannerBuilder(table).startAt(
+                Bytes.toBytes("row04")), executor).regionScans();
+
+        assertEquals(2, scans.size());
+        assertEquals("row04", Bytes.toString(scans.get(0).getStartRow()));
+        assertEquals("row06", Bytes.toString(scans.get(0).getStopRow()));
+        assertEquals("row06", Bytes.toString(scans.get(1).getStartRow()));
+        assertEquals(0, scans.get(1).getStopRow().length);
+    }
+}
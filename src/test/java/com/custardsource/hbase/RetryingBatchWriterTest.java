@@ -0,0 +1,148 @@
+package com.custardsource.hbase;
+
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.custardsource.hbase.metrics.Operation;
+import com.custardsource.hbase.metrics.OperationMetrics;
+import com.custardsource.hbase.metrics.RecordingClientMetrics;
+import com.google.common.collect.Lists;
+
+
+public class RetryingBatchWriterTest extends TestCase {
+
+    private static final String FOO = "foo";
+    private static final RetryPolicy IMMEDIATE_RETRIES = RetryPolicy.exponentialBackoff()
+            .withBackoff(0, 0).withMaxAttempts(3);
+
+    private InMemoryHTable table;
+    private RecordingClientMetrics metrics;
+    private CollectingDeadLetterSink deadLetterSink;
+
+    @Override
+    protected void setUp() throws Exception {
+        table = InMemoryHTable.create("test");
+        metrics = new RecordingClientMetrics();
+        deadLetterSink = new CollectingDeadLetterSink();
+    }
+
+    public void testOnlyFailedPutsAreResubmitted() throws IOException {
+        table.failNextFlushes(1, "b");
+
+        putRows(new PutBuilder(table).withRetryPolicy(IMMEDIATE_RETRIES), "a", "b", "c");
+
+        assertRowsExist("a", "b", "c");
+        OperationMetrics putMetrics = metrics.getOperationMetrics("test", Operation.PUT);
+        assertEquals(1, putMetrics.getRetries());
+        assertEquals("the failed attempt should be recorded as well as the retry", 2, putMetrics
+                .getCalls());
+        assertEquals("only the failed Put should have been resubmitted", 3 + 1, putMetrics
+                .getRows());
+    }
+
+    public void testExhaustedFailuresGoToTheDeadLetterSink() throws IOException {
+        table.failNextFlushes(10, "b");
+
+        putRows(new PutBuilder(table).withRetryPolicy(IMMEDIATE_RETRIES).withDeadLetterSink(
+                deadLetterSink), "a", "b", "c");
+
+        assertRowsExist("a", "c");
+        assertNull(table.get(new Get(Bytes.toBytes("b"))));
+        assertEquals(1, deadLetterSink.puts.size());
+        assertEquals("b", Bytes.toString(deadLetterSink.puts.get(0).getRow()));
+        assertEquals(1, metrics.getOperationMetrics("test", Operation.PUT).getFailures());
+    }
+
+    public void testExhaustedFailuresPropagateWithoutADeadLetterSink() {
+        table.failNextFlushes(10, "b");
+
+        try {
+            putRows(new PutBuilder(table).withRetryPolicy(IMMEDIATE_RETRIES), "a", "b");
+            fail("Should have propagated the failure");
+        } catch (RuntimeException expected) {
+        }
+        assertEquals(2, metrics.getOperationMetrics("test", Operation.PUT).getRetries());
+    }
+
+    public void testBufferedFailuresAreFlushedRatherThanDuplicated() throws IOException {
+        table.setAutoFlush(false);
+        putRows(new PutBuilder(table), "a", "b", "c");
+        table.failNextFlushes(1, "b");
+
+        HBaseUtils.flushQuietly(table, IMMEDIATE_RETRIES, deadLetterSink, metrics);
+
+        assertRowsExist("a", "b", "c");
+        assertTrue(table.getWriteBuffer().isEmpty());
+        assertTrue(deadLetterSink.puts.isEmpty());
+        assertEquals(3, table.getCellCount());
+        OperationMetrics flushMetrics = metrics.getOperationMetrics("test", Operation.FLUSH);
+        assertEquals(2, flushMetrics.getCalls());
+        assertEquals("the whole buffer, then only the failed Put", 3 + 1, flushMetrics.getRows());
+    }
+
+    public void testDeadLetteredPutsLeaveTheWriteBuffer() throws IOException {
+        table.setAutoFlush(false);
+        putRows(new PutBuilder(table), "a", "b", "c");
+        table.failNextFlushes(10, "b");
+
+        HBaseUtils.flushQuietly(table, IMMEDIATE_RETRIES, deadLetterSink, metrics);
+
+        assertRowsExist("a", "c");
+        assertTrue(table.getWriteBuffer().isEmpty());
+        assertEquals(1, deadLetterSink.puts.size());
+        assertEquals("b", Bytes.toString(deadLetterSink.puts.get(0).getRow()));
+    }
+
+    public void testRetryBudgetLimitsRetriesAcrossBatches() {
+        RetryPolicy policy = IMMEDIATE_RETRIES.withRetryBudget(new RetryBudget(0, 1));
+        table.failNextFlushes(10, "b");
+
+        putRows(new PutBuilder(table).withRetryPolicy(policy).withDeadLetterSink(deadLetterSink),
+                "b");
+        putRows(new PutBuilder(table).withRetryPolicy(policy).withDeadLetterSink(deadLetterSink),
+                "b");
+
+        assertEquals("the budget allowed only a single retry", 1, metrics.getOperationMetrics(
+                "test", Operation.PUT).getRetries());
+        assertEquals(2, deadLetterSink.puts.size());
+    }
+
+    public void testBackoffIsExponentialAndCapped() {
+        RetryPolicy policy = RetryPolicy.exponentialBackoff().withBackoff(100, 1000).withJitter(0);
+
+        assertEquals(100, policy.backoffMillis(1));
+        assertEquals(200, policy.backoffMillis(2));
+        assertEquals(800, policy.backoffMillis(4));
+        assertEquals(1000, policy.backoffMillis(5));
+        assertEquals(1000, policy.backoffMillis(50));
+    }
+
+    private void putRows(PutBuilder builder, String... rows) {
+        builder.withMetrics(metrics).withColumnFamily(FOO);
+        for (String row : rows) {
+            builder.withRowKey(row).put("columnA", row);
+        }
+        builder.putAll();
+    }
+
+    private void assertRowsExist(String... rows) throws IOException {
+        for (String row : rows) {
+            assertNotNull("row " + row, table.get(new Get(Bytes.toBytes(row))));
+        }
+    }
+
+    private static class CollectingDeadLetterSink implements DeadLetterSink {
+        private final List<Put> puts = Lists.newArrayList();
+
+        @Override
+        public void accept(String tableName, List<Put> failed, Throwable cause) {
+            puts.addAll(failed);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.custardsource.hbase;
+
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.collect.Lists;
+
+
+public class RowKeyEncoderTest extends TestCase {
+
+    private final RowKeyEncoder encoder = new RowKeyEncoder(4);
+    private final RowKeyDecoder decoder = new RowKeyDecoder();
+
+    public void testComponentsRoundTrip() {
+        byte[] key = encoder.reset().addString("tenant\u0000\u00e9\u4e2d\ud83d\ude00").addInt(-7)
+                .addLong(Long.MIN_VALUE).addReversedLong(1234567890123L).addDouble(-1.5)
+                .addBytes(new byte[] { 0, (byte) 0xFF, 0 }).toBytes();
+
+        decoder.wrap(key);
+        assertEquals("tenant\u0000\u00e9\u4e2d\ud83d\ude00", decoder.readString());
+        assertEquals(-7, decoder.readInt());
+        assertEquals(Long.MIN_VALUE, decoder.readLong());
+        assertEquals(1234567890123L, decoder.readReversedLong());
+        assertEquals(-1.5, decoder.readDouble(), 0);
+        assertTrue(Bytes.equals(new byte[] { 0, (byte) 0xFF, 0 }, decoder.readBytes()));
+        assertFalse(decoder.hasRemaining());
+    }
+
+    public void testNumbersSortInNumericOrder() {
+        assertAscending(key().addInt(Integer.MIN_VALUE), key().addInt(-1), key().addInt(0), key()
+                .addInt(Integer.MAX_VALUE));
+        assertAscending(key().addLong(-5), key().addLong(3), key().addLong(Long.MAX_VALUE));
+        assertAscending(key().addDouble(Double.NEGATIVE_INFINITY), key().addDouble(-2.5), key()
+                .addDouble(-0.0), key().addDouble(0.0), key().addDouble(0.1), key().addDouble(
+                Double.POSITIVE_INFINITY));
+        assertAscending(key().addReversedLong(300), key().addReversedLong(200), key()
+                .addReversedLong(-100));
+    }
+
+    public void testStringComponentsAreNotConfusedWithPrefixes() {
+        assertAscending(key().addString("ab").addString("zzz"), key().addString("ab\u0000")
+                .addString("aaa"), key().addString("abc").addString("aaa"));
+    }
+
+    public void testBufferIsReusedAfterReset() {
+        byte[] first = encoder.reset().addString("a-long-tenant-name").addLong(1).toBytes();
+        byte[] second = encoder.reset().addString("b").toBytes();
+
+        assertEquals("a-long-tenant-name", new RowKeyDecoder().wrap(first)
+                .readString());
+        assertEquals(3, second.length);
+        assertEquals(3, encoder.getLength());
+    }
+
+    public void testDecoderRejectsTruncatedKeys() {
+        try {
+            decoder.wrap(new byte[] { 1, 2 }).readLong();
+            fail("a truncated key should have been rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testPrefixStopRowSortsAfterEveryKeyWithThePrefix() {
+        byte[] prefix = key().addString("tenant").toBytes();
+        byte[] stopRow = key().addString("tenant").toPrefixStopRow();
+        byte[] longest = key().addString("tenant").addBytes(new byte[] { (byte) 0xFF, (byte) 0xFF })
+                .toBytes();
+
+        assertTrue(Bytes.compareTo(prefix, stopRow) < 0);
+        assertTrue(Bytes.compareTo(longest, stopRow) < 0);
+        assertTrue(Bytes.compareTo(key().addString("tenanu").toBytes(), stopRow) > 0);
+        assertEquals(0, new RowKeyEncoder().addBytes(new byte[0]).reset().toPrefixStopRow().length);
+    }
+
+    public void testPrefixScanOfCompositeKeysReturnsNewestFirst() throws IOException {
+        InMemoryHTable table = InMemoryHTable.create("metrics");
+        PutBuilder builder = new PutBuilder(table);
+        for (String tenant : new String[] { "acme", "acme-corp" }) {
+            for (long timestamp = 1000; timestamp <= 3000; timestamp += 1000) {
+                builder.withRowKey(
+                        encoder.reset().addString(tenant).addString("cpu").addReversedLong(
+                                timestamp)).withColumnFamily("m").put("value", timestamp);
+            }
+        }
+        builder.putAll();
+
+        ResultScanner scanner = new ResultScannerBuilder(table).withRowPrefix(
+                encoder.reset().addString("acme").addString("cpu")).build();
+        List<Long> timestamps = Lists.newArrayList();
+        try {
+            for (Result result : scanner) {
+                timestamps.add(decoder.wrap(result.getRow()).skipComponent().skipComponent()
+                        .readReversedLong());
+            }
+        } finally {
+            scanner.close();
+        }
+
+        assertEquals(Lists.newArrayList(3000L, 2000L, 1000L), timestamps);
+    }
+
+    private RowKeyEncoder key() {
+        return new RowKeyEncoder();
+    }
+
+    private void assertAscending(RowKeyEncoder... keys) {
+        for (int i = 1; i < keys.length; i++) {
+            assertTrue("key " + i + " should sort after key " + (i - 1), Bytes.compareTo(keys[i - 1]
+                    .toBytes(), keys[i].toBytes()) < 0);
+        }
+    }
+}
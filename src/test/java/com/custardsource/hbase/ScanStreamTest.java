@@ -0,0 +1,297 @@
+package com.custardsource.hbase;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+
+
+public class ScanStreamTest extends TestCase {
+
+    private static final String FAMILY = "family";
+
+    private InMemoryHTable table;
+
+    @Override
+    protected void setUp() throws Exception {
+        table = InMemoryHTable.create("stream", "row05");
+
+        PutBuilder builder = new PutBuilder(table);
+        for (int i = 0; i < 10; i++) {
+            builder.withRowKey(String.format("row%02d", i)).withColumnFamily(FAMILY).put("value",
+                    String.valueOf(i));
+        }
+        builder.putAll();
+        table.resetRpcCount();
+    }
+
+    public void testMapFilterAndLimitArePulledLazily() {
+        ScanStream<String> values = new ResultScannerBuilder(table).withCaching(1).stream().map(
+                ResultTransformer.stringsFunction(FAMILY)).map(VALUE).filter(
+                new Predicate<String>() {
+                    @Override
+                    public boolean apply(String value) {
+                        return Integer.parseInt(value) % 2 == 1;
+                    }
+                }).limit(2);
+
+        assertEquals(0, table.getRpcCount());
+        assertEquals(Lists.newArrayList("1", "3"), Lists.newArrayList(values));
+        assertEquals("only the rows needed for the limit should have been fetched", 4, table
+                .getRpcCount());
+    }
+
+    public void testBatchesIncludeATrailingPartialBatch() {
+        List<List<Result>> batches = Lists.newArrayList(new ResultScannerBuilder(table).stream()
+                .batch(4));
+
+        assertEquals(3, batches.size());
+        assertEquals(4, batches.get(0).size());
+        assertEquals(2, batches.get(2).size());
+    }
+
+    public void testParallelMapPreservesOrder() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<String> rows = Lists.newArrayList(new ResultScannerBuilder(table).stream()
+                    .parallelMap(ROW_KEY, executor, 3));
+
+            assertEquals(10, rows.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(String.format("row%02d", i), rows.get(i));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testParallelMapFailureEndsTheStream() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ScanStream<String> rows = new ResultScannerBuilder(table).stream().parallelMap(
+                    new Function<Result, String>() {
+                        @Override
+                        public String apply(Result result) {
+                            throw new IllegalStateException("boom");
+                        }
+                    }, executor, 2);
+            try {
+                rows.iterator().next();
+                fail("the failure should have been propagated");
+            } catch (RuntimeException expected) {
+                assertTrue(expected.getCause() instanceof IllegalStateException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testFailingMapClosesTheScanner() {
+        Iterator<String> rows = new ResultScannerBuilder(table).stream().map(FAIL_ON_ROW_01)
+                .iterator();
+        rows.next();
+        try {
+            rows.next();
+            fail("the failure should have been propagated");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(0, table.getOpenScannerCount());
+    }
+
+    public void testFailingFilterClosesTheScanner() {
+        Iterator<Result> rows = new ResultScannerBuilder(table).stream().filter(
+                new Predicate<Result>() {
+                    @Override
+                    public boolean apply(Result result) {
+                        throw new IllegalStateException("boom");
+                    }
+                }).iterator();
+        try {
+            rows.hasNext();
+            fail("the failure should have been propagated");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(0, table.getOpenScannerCount());
+    }
+
+    public void testForEachClosesTheScannerWhenTheActionFails() {
+        final List<String> seen = Lists.newArrayList();
+        try {
+            new ResultScannerBuilder(table).stream().map(ROW_KEY).forEach(
+                    new Function<String, Void>() {
+                        @Override
+                        public Void apply(String row) {
+                            seen.add(row);
+                            throw new IllegalStateException("boom");
+                        }
+                    });
+            fail("the failure should have been propagated");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(Lists.newArrayList("row00"), seen);
+        assertEquals(0, table.getOpenScannerCount());
+    }
+
+    public void testDrainToCollectsEveryElement() {
+        List<String> rows = new ResultScannerBuilder(table).stream().map(ROW_KEY).limit(3)
+                .drainTo(Lists.<String> newArrayList());
+
+        assertEquals(Lists.newArrayList("row00", "row01", "row02"), rows);
+        assertEquals(0, table.getOpenScannerCount());
+    }
+
+    public void testCanOnlyBeIteratedOnce() {
+        ScanStream<Result> stream = new ResultScannerBuilder(table).stream();
+        stream.iterator();
+        try {
+            stream.iterator();
+            fail("a stream should only be iterable once");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testCloseEndsIteration() {
+        ScanStream<Result> stream = new ResultScannerBuilder(table).withCaching(1).stream();
+        Iterator<Result> iterator = stream.iterator();
+        iterator.next();
+        stream.close();
+
+        assertFalse(iterator.hasNext());
+        assertEquals(0, table.getOpenScannerCount());
+    }
+
+    public void testCloseDuringAFetchWaitsForTheFetchToReturn() throws Exception {
+        table.withRpcLatency(200);
+        ScanStream<Result> stream = new ResultScannerBuilder(table).withCaching(1).stream();
+        final Iterator<Result> iterator = stream.iterator();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> fetched = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return iterator.hasNext();
+                }
+            });
+            Thread.sleep(50);
+            stream.close();
+
+            assertTrue("the row being fetched is still returned", fetched.get());
+            iterator.next();
+            assertFalse(iterator.hasNext());
+            assertEquals(0, table.getOpenScannerCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testPublisherHonoursDemand() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        ScanPublisher.of(new ResultScannerBuilder(table).stream().map(ROW_KEY)).subscribe(
+                subscriber);
+
+        subscriber.subscription.request(3);
+        assertEquals(Lists.newArrayList("row00", "row01", "row02"), subscriber.received);
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(10, subscriber.received.size());
+        assertTrue(subscriber.completed);
+    }
+
+    public void testPublisherCancelStopsEmission() {
+        RecordingSubscriber subscriber = new RecordingSubscriber() {
+            @Override
+            public void onNext(String row) {
+                super.onNext(row);
+                if (received.size() == 2) {
+                    subscription.cancel();
+                }
+            }
+        };
+        ScanPublisher.of(new ResultScannerBuilder(table).stream().map(ROW_KEY)).subscribe(
+                subscriber);
+        subscriber.subscription.request(5);
+
+        assertEquals(2, subscriber.received.size());
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    public void testPublisherRejectsNonPositiveRequests() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        ScanPublisher.of(new ResultScannerBuilder(table).stream().map(ROW_KEY)).subscribe(
+                subscriber);
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    private static final Function<NavigableMap<String, String>, String> VALUE = new Function<NavigableMap<String, String>, String>() {
+        @Override
+        public String apply(NavigableMap<String, String> columns) {
+            return columns.get("value");
+        }
+    };
+
+    private static final Function<Result, String> ROW_KEY = new Function<Result, String>() {
+        @Override
+        public String apply(Result result) {
+            return Bytes.toString(result.getRow());
+        }
+    };
+
+    private static final Function<Result, String> FAIL_ON_ROW_01 = new Function<Result, String>() {
+        @Override
+        public String apply(Result result) {
+            String row = Bytes.toString(result.getRow());
+            if (row.equals("row01")) {
+                throw new IllegalStateException("boom");
+            }
+            return row;
+        }
+    };
+
+    private static class RecordingSubscriber implements Subscriber<String> {
+        final List<String> received = Lists.newArrayList();
+        Subscription subscription;
+        boolean completed = false;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(String row) {
+            received.add(row);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
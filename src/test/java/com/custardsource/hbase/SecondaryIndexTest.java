@@ -0,0 +1,130 @@
+package com.custardsource.hbase;
+
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.collect.Lists;
+
+
+public class SecondaryIndexTest extends TestCase {
+
+    private static final String USER = "user";
+    private static final String COUNTRY = "country";
+
+    private InMemoryHTable dataTable;
+    private InMemoryHTable indexTable;
+    private SecondaryIndex index;
+
+    @Override
+    protected void setUp() throws Exception {
+        dataTable = InMemoryHTable.create("users");
+        indexTable = InMemoryHTable.create("users-index");
+        index = new SecondaryIndex(indexTable).withIndexedColumn(USER, COUNTRY);
+
+        PutBuilder builder = new PutBuilder(dataTable).withSecondaryIndex(index);
+        addUser(builder, "alice", "AU");
+        addUser(builder, "bob", "NZ");
+        addUser(builder, "carol", "AU");
+        addUser(builder, "dave", "US");
+        addUser(builder, "erin", "AUS");
+        builder.putAll();
+    }
+
+    private void addUser(PutBuilder builder, String name, String country) {
+        builder.withRowKey(name).withColumnFamily(USER).put(COUNTRY, country).put("name", name);
+    }
+
+    public void testOnlyIndexedColumnsAreIndexed() {
+        assertEquals(5, indexTable.getRowCount());
+    }
+
+    public void testEqualityLookupDoesNotMatchLongerValues() throws IOException {
+        List<Result> results = index.stringQuery(dataTable).withColumnFamily(USER).column(COUNTRY)
+                .valueMustEqual("AU").find();
+
+        assertEquals(Lists.newArrayList("alice", "carol"), rowKeys(results));
+    }
+
+    public void testRangeLookupExcludesUpperBound() throws IOException {
+        List<Result> results = index.stringQuery(dataTable).withColumnFamily(USER).column(COUNTRY)
+                .valueBetween("AU", "US").withFetchBatchSize(2).find();
+
+        assertEquals(Lists.newArrayList("alice", "carol", "erin", "bob"), rowKeys(results));
+    }
+
+    public void testStaleIndexEntriesAreSkipped() throws IOException {
+        new PutBuilder(dataTable).withSecondaryIndex(index).withRowKey("alice").withColumnFamily(
+                USER).put(COUNTRY, "US").putAll();
+
+        assertEquals(Lists.newArrayList("carol"), rowKeys(index.stringQuery(dataTable)
+                .withColumnFamily(USER).column(COUNTRY).valueMustEqual("AU").find()));
+        assertEquals(Lists.newArrayList("alice", "dave"), rowKeys(index.stringQuery(dataTable)
+                .withColumnFamily(USER).column(COUNTRY).valueMustEqual("US").find()));
+    }
+
+    public void testRowOverwrittenWithinTheRangeIsReturnedOnce() throws IOException {
+        new PutBuilder(dataTable).withSecondaryIndex(index).withRowKey("alice").withColumnFamily(
+                USER).put(COUNTRY, "NZ").putAll();
+
+        assertEquals(Lists.newArrayList("alice", "carol", "erin", "bob"), rowKeys(index
+                .stringQuery(dataTable).withColumnFamily(USER).column(COUNTRY).valueBetween("AU",
+                        "US").withFetchBatchSize(1).find()));
+    }
+
+    public void testDataIsDeadLetteredWithItsIndexRows() throws IOException {
+        indexTable.failNextFlushes(1, Bytes.toString(SecondaryIndex.indexRowKey(Bytes
+                .toBytes(USER), Bytes.toBytes(COUNTRY), Bytes.toBytes("FR"), Bytes.toBytes("frank"))));
+        final List<String> deadLetters = Lists.newArrayList();
+        PutBuilder builder = new PutBuilder(dataTable).withSecondaryIndex(index)
+                .withDeadLetterSink(new DeadLetterSink() {
+                    @Override
+                    public void accept(String tableName, List<Put> puts, Throwable cause) {
+                        deadLetters.add(tableName);
+                        for (Put put : puts) {
+                            assertTrue(put.toString().contains("frank"));
+                        }
+                    }
+                });
+        addUser(builder, "frank", "FR");
+        addUser(builder, "gina", "FR");
+        builder.putAll();
+
+        assertEquals(Lists.newArrayList("users-index", "users"), deadLetters);
+        assertNull(dataTable.get(new Get(Bytes.toBytes("frank"))));
+        assertEquals(Lists.newArrayList("gina"), rowKeys(index.stringQuery(dataTable)
+                .withColumnFamily(USER).column(COUNTRY).valueMustEqual("FR").find()));
+    }
+
+    public void testIndexKeysSortByValueEvenWithEmbeddedZeroBytes() {
+        byte[] family = Bytes.toBytes(USER);
+        byte[] qualifier = Bytes.toBytes(COUNTRY);
+        byte[] a = SecondaryIndex.indexRowKey(family, qualifier, new byte[] { 'a' }, Bytes
+                .toBytes("zzz"));
+        byte[] aZero = SecondaryIndex.indexRowKey(family, qualifier, new byte[] { 'a', 0 }, Bytes
+                .toBytes("aaa"));
+        byte[] b = SecondaryIndex.indexRowKey(family, qualifier, new byte[] { 'b' }, Bytes
+                .toBytes("aaa"));
+
+        assertTrue(Bytes.compareTo(a, aZero) < 0);
+        assertTrue(Bytes.compareTo(aZero, b) < 0);
+        assertTrue(Bytes.compareTo(a, SecondaryIndex.endOfValue(family, qualifier,
+                new byte[] { 'a' })) < 0);
+        assertTrue(Bytes.compareTo(aZero, SecondaryIndex.endOfValue(family, qualifier,
+                new byte[] { 'a' })) > 0);
+    }
+
+    private List<String> rowKeys(List<Result> results) {
+        List<String> rowKeys = Lists.newArrayList();
+        for (Result result : results) {
+            rowKeys.add(Bytes.toString(result.getRow()));
+        }
+        return rowKeys;
+    }
+}
@@ -0,0 +1,106 @@
+package com.custardsource.hbase;
+
+import java.io.IOException;
+import java.util.NavigableMap;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+
+public class VersionedResultTransformerTest extends TestCase {
+
+    private static final String METRICS = "m";
+
+    private InMemoryHTable table;
+
+    @Override
+    protected void setUp() throws Exception {
+        table = InMemoryHTable.create("history");
+
+        PutBuilder builder = new PutBuilder(table);
+        // cpu samples every 20 seconds for two minutes, load samples for the first minute
+        for (long second = 0; second < 120; second += 20) {
+            builder.withRowKey("host1").withColumnFamily(METRICS).withTimeStamp(second * 1000).put(
+                    "cpu", second);
+            if (second < 60) {
+                builder.put("load", second * 2);
+            }
+        }
+        builder.putAll();
+    }
+
+    public void testLatestVersionOnlyByDefault() throws IOException {
+        NavigableMap<String, TimeSeries> series = transform(new ResultScannerBuilder(table),
+                transformer());
+
+        assertEquals(1, series.get("cpu").size());
+        assertEquals(100.0, series.get("cpu").getLatestValue(), 0);
+    }
+
+    public void testAllVersionsAreOldestFirst() throws IOException {
+        NavigableMap<String, TimeSeries> series = transform(new ResultScannerBuilder(table)
+                .withAllVersions(), transformer());
+
+        TimeSeries cpu = series.get("cpu");
+        assertEquals(6, cpu.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i * 20000L, cpu.getTimestamp(i));
+            assertEquals(i * 20.0, cpu.getValue(i), 0);
+        }
+        assertEquals(3, series.get("load").size());
+        assertEquals(80.0, series.get("load").getLatestValue(), 0);
+    }
+
+    public void testMaxVersionsAndTimeRangeAreApplied() throws IOException {
+        TimeSeries cpu = transform(new ResultScannerBuilder(table).withMaxVersions(2)
+                .withTimeRange(0, 60000), transformer()).get("cpu");
+
+        assertEquals(2, cpu.size());
+        assertEquals(20000L, cpu.getTimestamp(0));
+        assertEquals(40000L, cpu.getTimestamp(1));
+    }
+
+    public void testDownsamplingCombinesEachWindow() throws IOException {
+        TimeSeries mean = transform(new ResultScannerBuilder(table).withAllVersions(),
+                transformer().withDownsampling(1, TimeUnit.MINUTES, Downsampling.MEAN)).get("cpu");
+
+        assertEquals(2, mean.size());
+        assertEquals(0L, mean.getTimestamp(0));
+        assertEquals(20.0, mean.getValue(0), 0);
+        assertEquals(60000L, mean.getTimestamp(1));
+        assertEquals(80.0, mean.getValue(1), 0);
+
+        TimeSeries last = transform(new ResultScannerBuilder(table).withAllVersions(),
+                transformer().withDownsampling(1, TimeUnit.MINUTES, Downsampling.LAST)).get("cpu");
+        assertEquals(40.0, last.getValue(0), 0);
+        assertEquals(100.0, last.getValue(1), 0);
+    }
+
+    public void testInvalidTimeRangeIsRejected() {
+        try {
+            new ResultScannerBuilder(table).withTimeRange(100, 100);
+            fail("an empty time range should have been rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private VersionedResultTransformer<String> transformer() {
+        return VersionedResultTransformer.forStrings(METRICS, HBaseFunctions.BYTES_TO_LONG);
+    }
+
+    private NavigableMap<String, TimeSeries> transform(ResultScannerBuilder scannerBuilder,
+            VersionedResultTransformer<String> transformer) throws IOException {
+        ResultScanner scanner = scannerBuilder.build();
+        try {
+            Result result = scanner.next();
+            assertNotNull(result);
+            assertNull("only one row was written", scanner.next());
+            return transformer.transform(result);
+        } finally {
+            scanner.close();
+        }
+    }
+}
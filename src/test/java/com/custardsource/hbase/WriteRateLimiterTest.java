@@ -0,0 +1,42 @@
+package com.custardsource.hbase;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+
+public class WriteRateLimiterTest extends TestCase {
+
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    public void testBurstUpToOneSecondIsFree() {
+        WriteRateLimiter limiter = WriteRateLimiter.cellsPerSecond(1000);
+        long now = System.nanoTime();
+
+        assertEquals(0, limiter.reserve(600, now));
+        assertEquals(0, limiter.reserve(400, now));
+    }
+
+    public void testDeficitIsRepaidAtTheConfiguredRate() {
+        WriteRateLimiter limiter = WriteRateLimiter.cellsPerSecond(1000);
+        long now = System.nanoTime();
+
+        assertEquals(0, limiter.reserve(1000, now));
+        // 500 cells over budget at 1000/sec is half a second
+        assertEquals(ONE_SECOND / 2, limiter.reserve(500, now), TimeUnit.MILLISECONDS.toNanos(1));
+        // the next caller queues up behind the first deficit
+        assertEquals(ONE_SECOND, limiter.reserve(500, now), TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    public void testPermitsRefillOverTimeUpToOneSecond() {
+        WriteRateLimiter limiter = WriteRateLimiter.bytesPerSecond(1000);
+        long now = System.nanoTime();
+
+        limiter.reserve(1000, now);
+        assertEquals(0, limiter.reserve(250, now + ONE_SECOND / 4));
+
+        // a long idle period only banks a single second's worth
+        assertEquals(0, limiter.reserve(1000, now + 100 * ONE_SECOND));
+        assertTrue(limiter.reserve(1, now + 100 * ONE_SECOND) > 0);
+    }
+}
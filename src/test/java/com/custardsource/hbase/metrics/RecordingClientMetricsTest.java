@@ -0,0 +1,87 @@
+package com.custardsource.hbase.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+
+public class RecordingClientMetricsTest extends TestCase {
+
+    private static final String TABLE = "myTable";
+
+    public void testRecordsAreTaggedByTableAndOperation() {
+        RecordingClientMetrics metrics = new RecordingClientMetrics();
+
+        metrics.record(TABLE, Operation.PUT, 10, 20, 300, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.record(TABLE, Operation.PUT, 1, 2, 30, TimeUnit.MILLISECONDS.toNanos(1));
+        metrics.record("otherTable", Operation.PUT, 1, 1, 1, 1);
+        metrics.recordRetry(TABLE, Operation.PUT);
+        metrics.recordFailure(TABLE, Operation.SCAN);
+
+        OperationMetrics puts = metrics.getOperationMetrics(TABLE, Operation.PUT);
+        assertEquals(2, puts.getCalls());
+        assertEquals(11, puts.getRows());
+        assertEquals(22, puts.getCells());
+        assertEquals(330, puts.getBytes());
+        assertEquals(1, puts.getRetries());
+        assertEquals(0, puts.getFailures());
+        assertEquals(5000, puts.getMaxLatencyMicros());
+
+        OperationMetrics scans = metrics.getOperationMetrics(TABLE, Operation.SCAN);
+        assertEquals(0, scans.getCalls());
+        assertEquals(1, scans.getFailures());
+
+        assertEquals(3, metrics.getAll().size());
+    }
+
+    public void testNullTableIsRecordedAsUnknown() {
+        RecordingClientMetrics metrics = new RecordingClientMetrics();
+        metrics.record(null, Operation.FLUSH, 1, 1, 1, 1);
+
+        assertEquals(RecordingClientMetrics.UNKNOWN_TABLE, metrics.getAll().iterator().next()
+                .getTable());
+    }
+
+    public void testHistogramPercentilesAreBucketUpperBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertEquals(100, histogram.getCount());
+        // 100us falls in the [64, 128) bucket
+        assertEquals(128, histogram.getPercentileMicros(0.50));
+        assertEquals(128, histogram.getPercentileMicros(0.99));
+        // 50ms = 50000us falls in the [32768, 65536) bucket
+        assertEquals(65536, histogram.getPercentileMicros(1.0));
+        assertEquals(50000, histogram.getMaxMicros());
+    }
+
+    public void testDuplicateJmxRegistrationDoesNotFailRecording() throws Exception {
+        MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        JmxClientMetrics first = new JmxClientMetrics(mBeanServer);
+        JmxClientMetrics second = new JmxClientMetrics(mBeanServer);
+
+        first.record(TABLE, Operation.PUT, 1, 1, 1, 1);
+        second.record(TABLE, Operation.PUT, 1, 1, 1, 1);
+        second.recordFailure(TABLE, Operation.PUT);
+
+        assertEquals(1, second.getOperationMetrics(TABLE, Operation.PUT).getCalls());
+        assertEquals(1, second.getOperationMetrics(TABLE, Operation.PUT).getFailures());
+        ObjectName domain = new ObjectName(JmxClientMetrics.DOMAIN + ":*");
+        second.unregisterAll();
+        assertEquals("only the first instance's MBean should be registered", 1, mBeanServer
+                .queryNames(domain, null).size());
+        first.unregisterAll();
+        assertEquals(0, mBeanServer.queryNames(domain, null).size());
+    }
+
+    public void testNoOpIsDisabled() {
+        assertFalse(NoOpClientMetrics.INSTANCE.isEnabled());
+    }
+}